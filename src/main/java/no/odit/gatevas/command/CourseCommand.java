@@ -4,24 +4,23 @@ import lombok.extern.slf4j.Slf4j;
 import no.odit.gatevas.cli.Command;
 import no.odit.gatevas.cli.CommandHandler;
 import no.odit.gatevas.dao.CourseApplicationRepo;
-import no.odit.gatevas.dao.HomeAddressRepo;
+import no.odit.gatevas.misc.ImportPlan;
+import no.odit.gatevas.misc.ReportExporter;
+import no.odit.gatevas.misc.RosterReports;
 import no.odit.gatevas.model.*;
 import no.odit.gatevas.service.*;
 import no.odit.gatevas.type.ApplicationStatus;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
+import no.odit.gatevas.type.CanvasStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.text.SimpleDateFormat;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -36,9 +35,6 @@ public class CourseCommand implements CommandHandler {
     @Value("${gatevas.course.import_path}")
     private String courseImportPath;
 
-    @Autowired
-    private HomeAddressRepo homeAddressRepo;
-
     @Autowired
     private CourseService courseService;
 
@@ -63,22 +59,35 @@ public class CourseCommand implements CommandHandler {
     @Autowired
     private CourseApplicationRepo courseApplicationRepo;
 
+    @Autowired
+    private ReportExporter reportExporter;
+
+    @Autowired
+    private RosterReports rosterReports;
+
     public void handleCommand(Command cmd) {
         String[] args = cmd.getArgs();
+        boolean plan = args.length == 2 && args[0].equalsIgnoreCase("import") && args[1].equalsIgnoreCase("--plan");
+        boolean otherFile = args.length == 2 && args[0].equalsIgnoreCase("import") && args[1].equalsIgnoreCase("--file");
 
-        if (args.length != 1) {
+        if (args.length != 1 && !plan && !otherFile) {
             System.out.println("Available commands:");
             System.out.println("- course list");
             System.out.println("- course add");
             System.out.println("- course remove");
             System.out.println("- course info");
-            System.out.println("- course import");
+            System.out.println("- course import [--plan|--file]");
             System.out.println("- course export");
+            System.out.println("- course sis-import");
             System.out.println("- course enroll");
+            System.out.println("- course reconcile");
             System.out.println("- course sync");
+            System.out.println("- course sync-all");
+            System.out.println("- course enroll-all");
             System.out.println("- course email");
             System.out.println("- course sms");
             System.out.println("- course exam");
+            System.out.println("- course harvest-exams");
             System.out.println("- course overview");
             return;
         }
@@ -158,15 +167,38 @@ public class CourseCommand implements CommandHandler {
 
             courseService.getCourse(courseName).ifPresentOrElse((course) -> {
 
-                File csvFile = new File(courseImportPath, course.getCsvFile());
+                // Another sheet of the course, such as a fixed quarantine file
+                String fileName = course.getCsvFile();
+                if (otherFile) {
+                    System.out.print("Enter CSV file name: ");
+                    fileName = commandScanner.nextLine();
+                }
+                File csvFile = new File(courseImportPath, fileName);
+                if (!csvFile.exists()) {
+                    System.out.println("Could not find file '" + csvFile.getPath() + "'!");
+                    return;
+                }
+
+                // Show changes without writing them
+                if (plan) {
+                    System.out.println("Planning import of students from Google Spreadsheets...");
+                    long startTime = System.currentTimeMillis();
+                    courseService.planImport(csvFile, course, false).ifPresentOrElse(importPlan -> {
+                        SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy-HHmmss");
+                        File file = new File(courseExportPath + File.separator + course.getShortName() + "-plan-"
+                                + dateFormat.format(new Date()) + ".csv");
+                        printPlan(importPlan, file, startTime);
+                    }, () -> {
+                        System.out.println("Failed to plan import to '" + course.getShortName() + "'.");
+                    });
+                    return;
+                }
 
                 System.out.println("Importing students from Google Spreadsheets...");
-                courseService.importStudents(csvFile, course, false).ifPresentOrElse(students -> {
+                courseService.importStudents(csvFile, course, false,
+                        student -> enrollmentService.createEnrollment(student, course)).ifPresentOrElse(students -> {
 
-                    System.out.println("Imported " + students.size() + " students to '" + course.getShortName() + "'.");
-                    System.out.println("Enrolling " + students.size() + " students to " + course.getShortName() + "...");
-                    List<RoomLink> enrollments = enrollmentService.enrollStudent(students, course);
-                    System.out.println("Enrolled " + enrollments.size() + " students to '" + course.getShortName() + "'.");
+                    System.out.println("Imported and enrolled " + students + " students to '" + course.getShortName() + "'.");
 
                 }, () -> {
                     System.out.println("Failed to import students to '" + course.getShortName() + "'.");
@@ -202,6 +234,26 @@ public class CourseCommand implements CommandHandler {
 
         }
 
+        // Import missing students directly to Canvas LMS
+        else if (args[0].equalsIgnoreCase("sis-import")) {
+
+            System.out.println("Import missing students to Canvas LMS.");
+            System.out.print("Enter course name: ");
+            String courseName = commandScanner.nextLine();
+
+            courseService.getCourse(courseName).ifPresentOrElse((course) -> {
+
+                System.out.println("Uploading SIS import to Canvas LMS...");
+                if (canvasService.sisImportStudents(course))
+                    System.out.println("Imported missing students to '" + course.getShortName() + "'.");
+                else
+                    System.out.println("Failed to import students to '" + course.getShortName() + "'.");
+
+            }, () -> {
+                System.out.println("Could not find course '" + courseName + "'!");
+            });
+        }
+
         // Synchronize course with student enrollments
         else if (args[0].equalsIgnoreCase("sync")) {
 
@@ -225,6 +277,40 @@ public class CourseCommand implements CommandHandler {
 
         }
 
+        // Synchronize all active courses with student enrollments
+        else if (args[0].equalsIgnoreCase("sync-all")) {
+
+            List<Classroom> courses = courseService.getActiveCourses();
+            System.out.println("Synchronizing " + courses.size() + " active courses with Canvas LMS...");
+
+            if (canvasService.syncAll(courses))
+                System.out.println("Canvas LMS courses and students synchronized with local data.");
+            else
+                System.out.println("Failed to synchronize courses.");
+        }
+
+        // Add students to all active courses in Canvas LMS
+        else if (args[0].equalsIgnoreCase("enroll-all")) {
+
+            List<Classroom> courses = courseService.getActiveCourses();
+            System.out.println("Enrolling students to " + courses.size() + " active courses...");
+
+            if (!canvasService.syncCourses(courses)) {
+                System.out.println("Failed to synchronize courses.");
+                return;
+            }
+            List<Classroom> existing = courses.stream()
+                    .filter(course -> course.getCanvasStatus() == CanvasStatus.EXISTS)
+                    .collect(Collectors.toList());
+            courses.stream().filter(course -> course.getCanvasStatus() != CanvasStatus.EXISTS)
+                    .forEach(course -> System.out.println("Ignored course '" + course.getShortName() + "', not found in Canvas LMS."));
+
+            if (canvasService.enrollStudents(existing))
+                System.out.println("Enrolled students in " + existing.size() + " courses.");
+            else
+                System.out.println("Failed to enroll students.");
+        }
+
         // Add students the course in Canvas LMS
         else if (args[0].equalsIgnoreCase("enroll")) {
 
@@ -244,6 +330,25 @@ public class CourseCommand implements CommandHandler {
             });
         }
 
+        // Compare enrollments with the course roster in Canvas LMS
+        else if (args[0].equalsIgnoreCase("reconcile")) {
+
+            System.out.println("Reconcile enrollments with Canvas LMS.");
+            System.out.print("Enter course name: ");
+            String courseName = commandScanner.nextLine();
+
+            courseService.getCourse(courseName).ifPresentOrElse((course) -> {
+
+                if (canvasService.syncCourseReadOnly(course) && canvasService.reconcileEnrollments(course))
+                    System.out.println("Reconciled enrollments in '" + course.getShortName() + "'.");
+                else
+                    System.out.println("Failed to reconcile enrollments in '" + course.getShortName() + "'.");
+
+            }, () -> {
+                System.out.println("Could not find course '" + courseName + "'!");
+            });
+        }
+
         // Send email to students about the course and login information
         else if (args[0].equalsIgnoreCase("email")) {
 
@@ -328,6 +433,25 @@ public class CourseCommand implements CommandHandler {
 
         }
 
+        // Mark students with delivered assignments in Canvas LMS as finished
+        else if (args[0].equalsIgnoreCase("harvest-exams")) {
+
+            System.out.println("Harvest exam submissions from Canvas LMS.");
+            System.out.print("Enter course name: ");
+            String courseName = commandScanner.nextLine();
+
+            courseService.getCourse(courseName).ifPresentOrElse((course) -> {
+
+                if (canvasService.harvestExams(course))
+                    System.out.println("Harvested exam submissions in '" + course.getShortName() + "'.");
+                else
+                    System.out.println("Failed to harvest exam submissions in '" + course.getShortName() + "'.");
+
+            }, () -> {
+                System.out.println("Could not find course '" + courseName + "'!");
+            });
+        }
+
         // Reset exam status for students in course
         else if (args[0].equalsIgnoreCase("reset-exam")) {
 
@@ -366,38 +490,9 @@ public class CourseCommand implements CommandHandler {
                 log.info("Processing course '" + course.getShortName() + "'...");
 
                 File file = new File(globalExportPath + File.separator + course.getShortName() + "-" + date + ".csv");
-                try (FileWriter out = new FileWriter(file)) {
-                    out.write('\ufeff');
-
-                    String[] header = {"E-postadresse", "Kurs", "Fornavn", "Etternavn", "Fodselsdato", "Adresse", "Poststed", "Tlf nr", "Status"};
-                    try (CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withAllowMissingColumnNames().withDelimiter(';').withHeader(header))) {
-                        for (Student student : course.getStudents()) {
-                            CourseApplication apply = courseApplicationRepo.findByStudentAndCourse(student, course.getType()).orElse(null);
-                            Phone phone = student.getPhone();
-                            LocalDate birthDate = student.getBirthDate();
-                            String formattedBirthDate = birthDate != null ? birthDate.format(DateTimeFormatter.ofPattern("dd.MM.yyyy")) : "mangler data";
-                            String formattedPhoneNum = phone != null && phone.getPhoneNumber() != 0 ? String.valueOf(phone.getPhoneNumber()) : "mangler data";
-                            String applyStatus = apply != null ? apply.getStatus().toString()
-                                    .replace("ACCEPTED", "Ikke fullført")
-                                    .replace("WITHDRAWN", "Avmeldt")
-                                    .replace("WAITLIST", "Ukjent")
-                                    .replace("FINISHED", "Fullført") : "mangler data";
-                            HomeAddress homeAddress = homeAddressRepo.findByStudent(student).orElse(null);
-                            String address = homeAddress != null ? homeAddress.getStreetAddress() : "mangler data";
-                            if (homeAddress != null && address.length() <= 2) address = "mangler data";
-                            String postal = homeAddress != null ? homeAddress.getZipCode() + " " + homeAddress.getCity() : "mangler data";
-                            printer.printRecord(student.getEmail(),
-                                    course.getLongName(),
-                                    student.getFirstName(),
-                                    student.getLastName(),
-                                    formattedBirthDate,
-                                    address,
-                                    postal,
-                                    formattedPhoneNum,
-                                    applyStatus);
-                        }
-                    }
-                    log.info("Exported course '" + course.getShortName() + "'!");
+                try {
+                    int rows = reportExporter.export(rosterReports.overview(), file, () -> enrollmentService.streamRosters(List.of(course)));
+                    log.info("Exported " + rows + " students in course '" + course.getShortName() + "'!");
 
                 } catch (Exception ex) {
                     log.error("Failed to export course list.", ex);
@@ -409,4 +504,17 @@ public class CourseCommand implements CommandHandler {
         }
 
     }
+
+    // Prints change counts of import plan and exports every change
+    private void printPlan(ImportPlan plan, File file, long startTime) {
+        System.out.println("Planned " + plan.getChanges().size() + " changes in "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds:");
+        plan.getSummary().forEach((type, count) -> System.out.println("- " + type + ": " + count));
+        try {
+            plan.export(file);
+            System.out.println("Exported changes to " + file.getPath() + ".");
+        } catch (Exception ex) {
+            log.error("Failed to export import plan.", ex);
+        }
+    }
 }
\ No newline at end of file
@@ -2,27 +2,34 @@ package no.odit.gatevas.command;
 
 import no.odit.gatevas.cli.Command;
 import no.odit.gatevas.cli.CommandHandler;
-import no.odit.gatevas.dao.CourseApplicationRepo;
 import no.odit.gatevas.dao.CourseRepo;
-import no.odit.gatevas.dao.HomeAddressRepo;
+import no.odit.gatevas.dao.RosterRow;
+import no.odit.gatevas.misc.CanvasUserIndex;
+import no.odit.gatevas.misc.FieldCipherMigration;
+import no.odit.gatevas.misc.ImportBatch;
+import no.odit.gatevas.misc.ImportPlan;
+import no.odit.gatevas.misc.ReportDefinition;
+import no.odit.gatevas.misc.ReportExporter;
+import no.odit.gatevas.misc.RosterReports;
 import no.odit.gatevas.misc.SheetImportCSV;
+import no.odit.gatevas.misc.SheetWatcher;
 import no.odit.gatevas.model.*;
 import no.odit.gatevas.service.CourseService;
+import no.odit.gatevas.service.EnrollmentService;
 import no.odit.gatevas.type.ApplicationStatus;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
-import org.jasypt.util.text.StrongTextEncryptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.text.SimpleDateFormat;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Component
@@ -47,29 +54,100 @@ public class GlobalCommand implements CommandHandler {
     private CourseRepo courseRepo;
 
     @Autowired
-    private CourseApplicationRepo courseApplicationRepo;
+    private CanvasUserIndex canvasUserIndex;
 
     @Autowired
-    private HomeAddressRepo homeAddressRepo;
+    private ThreadPoolTaskExecutor taskExecutor;
 
     @Autowired
-    private StrongTextEncryptor textEncryptor;
+    private SheetWatcher sheetWatcher;
+
+    @Autowired
+    private EnrollmentService enrollmentService;
+
+    @Autowired
+    private ReportExporter reportExporter;
+
+    @Autowired
+    private RosterReports rosterReports;
+
+    @Autowired
+    private FieldCipherMigration fieldCipherMigration;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int connectionPoolSize;
 
     public void handleCommand(Command cmd) {
         String[] args = cmd.getArgs();
+        boolean plan = args.length == 2 && args[0].equalsIgnoreCase("import") && args[1].equalsIgnoreCase("--plan");
 
-        if (args.length != 1) {
+        if (args.length != 1 && !plan) {
             System.out.println("Available commands:");
-            System.out.println("- global import");
+            System.out.println("- global import [--plan]");
             System.out.println("- global export");
             System.out.println("- global custom-export");
             System.out.println("- global course-export");
             System.out.println("- global type-export");
+            System.out.println("- global canvas-refresh");
+            System.out.println("- global watch");
+            System.out.println("- global unwatch");
+            System.out.println("- global reencrypt");
             return;
         }
 
+        // Import sheets as they land in the import folders
+        if (args[0].equalsIgnoreCase("watch")) {
+
+            try {
+                if (sheetWatcher.start()) System.out.println("Watching import folders, new sheets are imported in the background.");
+                else System.out.println("Already watching import folders.");
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                System.out.println("Failed to watch import folders.");
+            }
+        }
+
+        // Stop importing sheets from the import folders
+        else if (args[0].equalsIgnoreCase("unwatch")) {
+
+            try {
+                if (sheetWatcher.stop()) System.out.println("Stopped watching import folders.");
+                else System.out.println("Not watching import folders.");
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                System.out.println("Failed to stop watching import folders.");
+            }
+        }
+
+        // Re-encrypt legacy social security numbers and fill missing blind indexes
+        else if (args[0].equalsIgnoreCase("reencrypt")) {
+
+            System.out.println("Re-encrypting social security numbers...");
+            try {
+                int count = fieldCipherMigration.migrate();
+                if (count < 0) System.out.println("Re-encryption is already running in the background.");
+                else System.out.println("Migrated " + count + " social security numbers.");
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                System.out.println("Failed to re-encrypt social security numbers.");
+            }
+        }
+
+        // Reload Canvas LMS user index
+        else if (args[0].equalsIgnoreCase("canvas-refresh")) {
+
+            System.out.println("Refreshing Canvas LMS user index...");
+            try {
+                int count = canvasUserIndex.refresh();
+                System.out.println("Indexed " + count + " users from Canvas LMS.");
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                System.out.println("Failed to refresh Canvas LMS user index.");
+            }
+        }
+
         // Import student applications from Google Sheets
-        if (args[0].equalsIgnoreCase("import")) {
+        else if (args[0].equalsIgnoreCase("import")) {
 
             System.out.println("Import student applications to system.");
 
@@ -82,22 +160,67 @@ public class GlobalCommand implements CommandHandler {
 
             System.out.println("Found " + csvFiles.values().stream().collect(Collectors.toSet()).size()
                     + " sheets to process.");
+
+            // Show changes without writing them
+            if (plan) {
+                System.out.println("Planning import of global student list...");
+                long startTime = System.currentTimeMillis();
+                try {
+                    ImportPlan importPlan = sheetImportCSV.plan(batch -> csvFiles.forEach((courseType, csvFile) ->
+                            sheetImportCSV.processSheet(new File(globalImportPath, csvFile), "type:" + courseType.getShortName(),
+                                    courseType, "UTF-8", true, batch)));
+                    SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy-HHmmss");
+                    File file = new File(globalExportPath + File.separator + "import-plan-" + dateFormat.format(new Date()) + ".csv");
+                    System.out.println("Planned " + importPlan.getChanges().size() + " changes in "
+                            + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds:");
+                    importPlan.getSummary().forEach((type, count) -> System.out.println("- " + type + ": " + count));
+                    importPlan.export(file);
+                    System.out.println("Exported changes to " + file.getPath() + ".");
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    System.out.println("Failed to plan import!");
+                }
+                return;
+            }
+
             System.out.print("Want to continue? (Y/N): ");
             if (commandScanner.nextLine().equalsIgnoreCase("Y")) {
                 System.out.println("Importing global student list...");
-                csvFiles.entrySet().stream().forEach(entry -> {
-                    CourseType courseType = entry.getKey();
-                    File csvFile = new File(globalImportPath, entry.getValue());
-                    try {
-                        Set<Student> students = sheetImportCSV.processSheet(csvFile, courseType, "UTF-8", true);
-                        System.out.println("Processed " + students.size() + " students in type " + courseType.getShortName() + ".");
-
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                        System.out.println("Failed to process sheet!");
-                    }
+                long startTime = System.currentTimeMillis();
+                AtomicInteger total = new AtomicInteger();
+
+                // Process sheets once no other import is in progress
+                sheetImportCSV.runExclusive(() -> {
+                    ImportBatch batch = sheetImportCSV.createBatch(student -> {
+                    });
+
+                    // Process sheets concurrently into one shared batch
+                    List<CompletableFuture<Void>> imports = csvFiles.entrySet().stream()
+                            .map(entry -> CompletableFuture.runAsync(() -> {
+                                CourseType courseType = entry.getKey();
+                                File csvFile = new File(globalImportPath, entry.getValue());
+                                long sheetStart = System.currentTimeMillis();
+                                try {
+                                    int students = sheetImportCSV.processSheet(csvFile, "type:" + courseType.getShortName(), courseType,
+                                            "UTF-8", true, batch);
+                                    total.addAndGet(students);
+                                    System.out.println("Processed " + students + " students in type " + courseType.getShortName()
+                                            + " in " + (System.currentTimeMillis() - sheetStart) / 1000.0 + " seconds.");
+
+                                } catch (Exception ex) {
+                                    ex.printStackTrace();
+                                    System.out.println("Failed to process sheet!");
+                                }
+                            }, taskExecutor))
+                            .collect(Collectors.toList());
+                    CompletableFuture.allOf(imports.toArray(new CompletableFuture[0])).join();
+                    sheetImportCSV.flush(batch);
+                    return null;
                 });
-                System.out.println("Successfully imported student list.");
+
+                double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+                System.out.println("Successfully imported student list (" + total.get() + " students in " + seconds
+                        + " seconds, " + Math.round(total.get() / seconds) + " students/second).");
             }
         }
 
@@ -110,16 +233,11 @@ public class GlobalCommand implements CommandHandler {
             String statusInput = commandScanner.nextLine().toUpperCase();
             ApplicationStatus status = null;
             if (!statusInput.equalsIgnoreCase("all")) status = ApplicationStatus.valueOf(statusInput);
+            Set<ApplicationStatus> statuses = status != null ? EnumSet.of(status) : EnumSet.allOf(ApplicationStatus.class);
 
-            List<CourseApplication> applications;
-            if (status == null) applications = courseApplicationRepo.findAll();
-            else applications = courseApplicationRepo.findByStatus(status);
-            applications = applications.stream()
-                    .filter(apply -> apply.getCourse().getCsvFile() != null)
-                    .filter(apply -> !apply.getCourse().getCsvFile().equalsIgnoreCase("null"))
-                    .sorted(Comparator.comparing(CourseApplication::getCreatedAt))
-                    .sorted(Comparator.comparing(e -> e.getCourse().getShortName()))
-                    .collect(Collectors.toList());
+            // Fix status of waitlisted students already enrolled
+            int accepted = courseService.acceptEnrolledApplications();
+            if (accepted > 0) System.out.println("Fixed status for " + accepted + " enrolled students on waitlist.");
 
             String typeName = status != null ? status.toString().toLowerCase() : "all";
             SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy-HHmmss");
@@ -127,41 +245,9 @@ public class GlobalCommand implements CommandHandler {
             File file = new File(globalExportPath + File.separator + typeName + "-" + date + ".csv");
 
             System.out.println("Exporting global student list...");
-            try (FileWriter out = new FileWriter(file)) {
-                out.write('\ufeff');
-
-                String[] header = {"Utdanning", "Fornavn", "Etternavn", "Fødselsdato", "E-postadresse", "Mobilnummer", "Kurskode", "Dato", "Status", "Opptak"};
-                CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withAllowMissingColumnNames().withDelimiter(';').withHeader(header));
-
-                for (CourseApplication apply : applications) {
-                    Student student = apply.getStudent();
-                    Phone phone = student.getPhone();
-                    LocalDate birthDate = student.getBirthDate();
-                    String formattedBirthDate = birthDate != null ? birthDate.format(DateTimeFormatter.ofPattern("ddMMyy")) : "mangler data";
-                    if (apply.getStatus() == ApplicationStatus.WAITLIST && student.getEnrollments() != null) {
-                        boolean alreadyEnrolled = student.getEnrollments().stream()
-                                .map(enroll -> enroll.getCourse().getType())
-                                .filter(type -> apply.getCourse().equals(type))
-                                .findAny().isPresent();
-                        if (alreadyEnrolled) {
-                            apply.setStatus(ApplicationStatus.ACCEPTED);
-                            courseApplicationRepo.saveAndFlush(apply);
-                            System.out.println("Fixed status for '" + student.getFullName() + "' in " + apply.getCourse().getShortName() + ".");
-                        }
-                    }
-                    printer.printRecord(apply.getCourse().getLongName(),
-                            student.getFirstName(),
-                            student.getLastName(),
-                            formattedBirthDate,
-                            student.getEmail(),
-                            phone != null ? phone.getPhoneNumber() : 0,
-                            apply.getCourse().getShortName(),
-                            apply.getCreatedAt().format(DateTimeFormatter.ofPattern("dd.MM.yyyy")),
-                            apply.getStatus().toString(),
-                            apply.getUptake() == null ? "Ukjent" : apply.getUptake() ? "Ja" : "Nei");
-                }
-                printer.close();
-                System.out.println("Successfully exported student list.");
+            try {
+                int rows = reportExporter.export(rosterReports.applications(), file, () -> courseService.streamApplications(statuses));
+                System.out.println("Successfully exported student list (" + rows + " applications).");
 
             } catch (Exception ex) {
                 ex.printStackTrace();
@@ -186,49 +272,10 @@ public class GlobalCommand implements CommandHandler {
             String date = dateFormat.format(new Date());
             File file = new File(globalExportPath + File.separator + typeName + "-" + date + ".csv");
 
-            List<String> temp = new ArrayList<>();
-
             System.out.println("Exporting global student list...");
-            try (FileWriter out = new FileWriter(file)) {
-                out.write('\ufeff');
-
-                String[] header = {"E-postadresse", "Kursnavn", "Fornavn", "Etternavn", "Tlf nr", "Kurskode", "Dato", "Status"};
-                CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withAllowMissingColumnNames().withDelimiter(';').withHeader(header));
-
-                for (Classroom course : courses) {
-                    for (RoomLink enrollment : course.getEnrollments()) {
-                        Student student = enrollment.getStudent();
-
-                        if (enrollment.getCreatedAt().isAfter(beforeTime)) {
-                            continue;
-                        }
-
-                        CourseApplication apply = courseApplicationRepo.findByStudentAndCourse(student, course.getType())
-                                .orElse(null);
-                        if (apply == null || apply.getStatus() == ApplicationStatus.WAITLIST
-                                || apply.getStatus() == ApplicationStatus.WITHDRAWN) {
-                            continue;
-                        }
-
-                        if (temp.contains(student.getEmail().toLowerCase())) {
-                            continue;
-                        } else {
-                            temp.add(student.getEmail().toLowerCase());
-                        }
-
-                        Phone phone = student.getPhone();
-                        printer.printRecord(student.getEmail(),
-                                course.getLongName(),
-                                student.getFirstName(),
-                                student.getLastName(),
-                                phone != null ? phone.getPhoneNumber() : 0,
-                                course.getShortName(),
-                                enrollment.getCreatedAt().format(DateTimeFormatter.ofPattern("dd.MM.yyyy")),
-                                apply != null ? apply.getStatus().toString() : "UNKNOWN");
-                    }
-                }
-                printer.close();
-                System.out.println("Successfully exported student list.");
+            try {
+                int rows = reportExporter.export(rosterReports.custom(beforeTime), file, () -> enrollmentService.streamRosters(courses));
+                System.out.println("Successfully exported student list (" + rows + " students).");
 
             } catch (Exception ex) {
                 ex.printStackTrace();
@@ -246,6 +293,7 @@ public class GlobalCommand implements CommandHandler {
             List<Classroom> courses = courseRepo.findAll().stream()
                     .filter(course -> course.getCreatedAt().isAfter(afterTime))
                     .filter(course -> course.getCreatedAt().isBefore(beforeTime))
+                    .filter(course -> course.getType().getCsvFile() != null && !course.getType().getCsvFile().equalsIgnoreCase("null"))
                     .collect(Collectors.toList());
 
             String typeName = "semester";
@@ -253,51 +301,9 @@ public class GlobalCommand implements CommandHandler {
             String date = dateFormat.format(new Date());
             File file = new File(globalExportPath + File.separator + typeName + "-" + date + ".csv");
 
-            try (FileWriter out = new FileWriter(file)) {
-                out.write('\ufeff');
-
-                String[] header = {"Kurs", "Fornavn", "Etternavn", "Fødselsnummer", "E-postadresse", "Mobilnummer",
-                        "Adresse", "Poststed", "Status"};
-                CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withAllowMissingColumnNames().withDelimiter(';').withHeader(header));
-
-                for (Classroom course : courses) {
-                    if (course.getEnrollments().stream().count() <= 0
-                            || course.getType().getCsvFile() == null
-                            || course.getType().getCsvFile().equalsIgnoreCase("null")) {
-                        System.out.println("Ignored course '" + course.getShortName() + "'.");
-                        continue;
-                    }
-                    System.out.println("Processing course '" + course.getShortName() + "'...");
-
-                    for (Student student : course.getStudents()) {
-                        CourseApplication apply = courseApplicationRepo.findByStudentAndCourse(student, course.getType()).orElse(null);
-                        Phone phone = student.getPhone();
-                        LocalDate birthDate = student.getBirthDate();
-                        String formattedBirthDate = birthDate != null ? birthDate.format(DateTimeFormatter.ofPattern("ddMMyy")) : "";
-                        String formattedPhoneNum = phone != null && phone.getPhoneNumber() != 0 ? String.valueOf(phone.getPhoneNumber()) : "";
-                        String applyStatus = apply != null ? apply.getStatus().toString()
-                                .replace("ACCEPTED", "Ikke fullført")
-                                .replace("WITHDRAWN", "Avmeldt")
-                                .replace("FINISHED", "Fullført") : "";
-                        HomeAddress homeAddress = homeAddressRepo.findByStudent(student).orElse(null);
-                        String address = homeAddress != null ? homeAddress.getStreetAddress() : "";
-                        if (homeAddress != null && address.length() <= 2) address = "";
-                        String postal = homeAddress != null ? homeAddress.getZipCode() + " " + homeAddress.getCity() : "";
-                        String socialSecurityNumber = student.getSocialSecurityNumber() != null ? textEncryptor.decrypt(student.getSocialSecurityNumber()) : formattedBirthDate;
-
-                        printer.printRecord(course.getLongName(),
-                                student.getFirstName(),
-                                student.getLastName(),
-                                socialSecurityNumber,
-                                student.getEmail(),
-                                formattedPhoneNum,
-                                address,
-                                postal,
-                                applyStatus);
-                    }
-                    System.out.println("Exported course '" + course.getShortName() + "'!");
-                }
-                printer.close();
+            try {
+                int rows = reportExporter.export(rosterReports.semester(), file, () -> enrollmentService.streamRosters(courses));
+                System.out.println("Exported " + rows + " students from " + courses.size() + " courses.");
 
             } catch (Exception ex) {
                 ex.printStackTrace();
@@ -318,55 +324,50 @@ public class GlobalCommand implements CommandHandler {
             List<Classroom> courses = courseService.getAllCourses().stream()
                     .filter(course -> course.getCreatedAt().isAfter(afterTime))
                     .collect(Collectors.toList());
-            for (Classroom course : courses) {
-                if (course.getEnrollments().stream().count() <= 0
-                        || course.getType().getCsvFile() == null
-                        || course.getType().getCsvFile().equalsIgnoreCase("null")) {
-                    System.out.println("Ignored course '" + course.getShortName() + "'.");
-                    continue;
-                }
-                System.out.println("Processing course '" + course.getShortName() + "'...");
-
-                File file = new File(globalExportPath + File.separator + course.getShortName() + "-" + date + ".csv");
-
-                try (FileWriter out = new FileWriter(file)) {
-                    out.write('\ufeff');
-
-                    String[] header = {"E-postadresse", "Kurs", "Fornavn", "Etternavn", "Fodselsdato", "Adresse", "Poststed", "Tlf nr", "Status"};
-                    CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withAllowMissingColumnNames().withDelimiter(';').withHeader(header));
-
-                    for (Student student : course.getStudents()) {
-                        CourseApplication apply = courseApplicationRepo.findByStudentAndCourse(student, course.getType()).orElse(null);
-                        Phone phone = student.getPhone();
-                        LocalDate birthDate = student.getBirthDate();
-                        String formattedBirthDate = birthDate != null ? birthDate.format(DateTimeFormatter.ofPattern("ddMMyy")) : "mangler data";
-                        String formattedPhoneNum = phone != null && phone.getPhoneNumber() != 0 ? String.valueOf(phone.getPhoneNumber()) : "mangler data";
-                        String applyStatus = apply != null ? apply.getStatus().toString()
-                                .replace("ACCEPTED", "Ikke fullført")
-                                .replace("WITHDRAWN", "Avmeldt")
-                                .replace("FINISHED", "Fullført") : "mangler data";
-                        HomeAddress homeAddress = homeAddressRepo.findByStudent(student).orElse(null);
-                        String address = homeAddress != null ? homeAddress.getStreetAddress() : "mangler data";
-                        if (homeAddress != null && address.length() <= 2) address = "mangler data";
-                        String postal = homeAddress != null ? homeAddress.getZipCode() + " " + homeAddress.getCity() : "mangler data";
-                        printer.printRecord(student.getEmail(),
-                                course.getLongName(),
-                                student.getFirstName(),
-                                student.getLastName(),
-                                formattedBirthDate,
-                                address,
-                                postal,
-                                formattedPhoneNum,
-                                applyStatus);
+
+            // Each export streams from its own connection, leave one for the rest of the application
+            int threads = Math.max(1, Math.min(connectionPoolSize - 1, Runtime.getRuntime().availableProcessors()));
+            AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService exportExecutor = Executors.newFixedThreadPool(threads,
+                    runnable -> new Thread(runnable, "course-export-" + threadCount.incrementAndGet()));
+            ReportDefinition<RosterRow> report = rosterReports.course();
+            long startTime = System.currentTimeMillis();
+            AtomicInteger total = new AtomicInteger();
+            AtomicInteger written = new AtomicInteger();
+            try {
+                List<CompletableFuture<Void>> exports = new ArrayList<>();
+                for (Classroom course : courses) {
+                    if (course.getType().getCsvFile() == null
+                            || course.getType().getCsvFile().equalsIgnoreCase("null")) {
+                        System.out.println("Ignored course '" + course.getShortName() + "'.");
+                        continue;
                     }
-                    printer.close();
-                    System.out.println("Exported course '" + course.getShortName() + "'!");
 
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    System.out.println("Failed to export global list.");
+                    File file = new File(globalExportPath + File.separator + course.getShortName() + "-" + date + ".csv");
+                    exports.add(CompletableFuture.runAsync(() -> {
+                        long courseStart = System.currentTimeMillis();
+                        try {
+                            int rows = reportExporter.export(report, file, () -> enrollmentService.streamRosters(List.of(course)));
+                            total.addAndGet(rows);
+                            if (rows > 0) {
+                                written.incrementAndGet();
+                                System.out.println("Exported course '" + course.getShortName() + "' (" + rows + " rows in "
+                                        + (System.currentTimeMillis() - courseStart) / 1000.0 + " seconds).");
+                            } else System.out.println("Ignored course '" + course.getShortName() + "' without students.");
+
+                        } catch (Exception ex) {
+                            ex.printStackTrace();
+                            System.out.println("Failed to export course '" + course.getShortName() + "'.");
+                        }
+                    }, exportExecutor));
                 }
+                CompletableFuture.allOf(exports.toArray(new CompletableFuture[0])).join();
+            } finally {
+                exportExecutor.shutdown();
             }
+
+            System.out.println("Exported " + written.get() + " courses (" + total.get() + " rows in "
+                    + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds).");
         }
 
         // Export course student lists to CSV file
@@ -380,50 +381,13 @@ public class GlobalCommand implements CommandHandler {
             List<CourseType> courseTypes = courseService.getCourseTypes();
             for (CourseType type : courseTypes) {
 
-                List<CourseApplication> applications = type.getApplications().stream()
-                        .sorted(Comparator.comparing(CourseApplication::getCreatedAt))
-                        .collect(Collectors.toList());
-                if (applications.size() <= 0) {
-                    System.out.println("Ignored course type '" + type.getShortName() + "'.");
-                    continue;
-                }
-
                 System.out.println("Processing course type '" + type.getShortName() + "'...");
                 File file = new File(globalExportPath + File.separator + type.getLongName() + " " + date + ".csv");
 
-                try (FileWriter out = new FileWriter(file)) {
-                    out.write('\ufeff');
-
-                    String[] header = {"E-postadresse", "Kurs", "Fornavn", "Etternavn", "Fodselsdato", "Adresse", "Poststed", "Tlf nr", "Status"};
-                    CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withAllowMissingColumnNames().withDelimiter(';').withHeader(header));
-
-                    for (CourseApplication apply : applications) {
-                        Student student = apply.getStudent();
-                        Phone phone = student.getPhone();
-                        LocalDate birthDate = student.getBirthDate();
-                        String formattedBirthDate = birthDate != null ? birthDate.format(DateTimeFormatter.ofPattern("ddMMyy")) : "mangler data";
-                        String formattedPhoneNum = phone != null && phone.getPhoneNumber() != 0 ? String.valueOf(phone.getPhoneNumber()) : "mangler data";
-                        String applyStatus = apply != null ? apply.getStatus().toString()
-                                .replace("ACCEPTED", "Tilbudt plass")
-                                .replace("WITHDRAWN", "Avmeldt")
-                                .replace("WAITLIST", "Venteliste")
-                                .replace("FINISHED", "Tilbudt plass") : "Venteliste";
-                        HomeAddress homeAddress = homeAddressRepo.findByStudent(student).orElse(null);
-                        String address = homeAddress != null ? homeAddress.getStreetAddress() : "mangler data";
-                        if (homeAddress != null && address.length() <= 2) address = "mangler data";
-                        String postal = homeAddress != null ? homeAddress.getZipCode() + " " + homeAddress.getCity() : "mangler data";
-                        printer.printRecord(student.getEmail(),
-                                type.getLongName(),
-                                student.getFirstName(),
-                                student.getLastName(),
-                                formattedBirthDate,
-                                address,
-                                postal,
-                                formattedPhoneNum,
-                                applyStatus);
-                    }
-                    printer.close();
-                    System.out.println("Exported course '" + type.getShortName() + "'!");
+                try {
+                    int rows = reportExporter.export(rosterReports.courseType(), file, () -> courseService.streamRoster(type));
+                    if (rows > 0) System.out.println("Exported course '" + type.getShortName() + "'!");
+                    else System.out.println("Ignored course type '" + type.getShortName() + "'.");
 
                 } catch (Exception ex) {
                     ex.printStackTrace();
@@ -46,9 +46,9 @@ public class StudentCommand implements CommandHandler {
 
             System.out.println("Remove student from course.");
 
-            System.out.print("Student email: ");
+            System.out.print("Student email or social security number: ");
             String identifier = commandScanner.nextLine();
-            studentService.getUserByEmail(identifier).ifPresentOrElse(student -> {
+            studentService.getUserByIdentifier(identifier).ifPresentOrElse(student -> {
 
                 System.out.print("Enter course type: ");
                 String courseName = commandScanner.nextLine();
@@ -89,9 +89,9 @@ public class StudentCommand implements CommandHandler {
 
             System.out.println("Add student from course.");
 
-            System.out.print("Student email: ");
+            System.out.print("Student email or social security number: ");
             String identifier = commandScanner.nextLine();
-            studentService.getUserByEmail(identifier).ifPresentOrElse(student -> {
+            studentService.getUserByIdentifier(identifier).ifPresentOrElse(student -> {
 
                 System.out.print("Enter course type: ");
                 String courseName = commandScanner.nextLine();
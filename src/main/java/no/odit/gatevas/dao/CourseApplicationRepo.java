@@ -5,11 +5,21 @@ import no.odit.gatevas.model.CourseType;
 import no.odit.gatevas.model.Student;
 import no.odit.gatevas.type.ApplicationStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface CourseApplicationRepo extends JpaRepository<CourseApplication, UUID> {
@@ -22,4 +32,34 @@ public interface CourseApplicationRepo extends JpaRepository<CourseApplication,
 
     List<CourseApplication> findByCourse(CourseType course);
 
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new no.odit.gatevas.dao.RosterRow(t.shortName, t.longName, s.id, s.email, s.firstName, s.lastName, "
+            + "s.birthDate, s.socialSecurityNumber, p.phoneNumber, h.id, h.streetAddress, h.zipCode, h.city, a.status, "
+            + "a.uptake, a.createdAt) "
+            + "FROM CourseApplication a JOIN a.course t JOIN a.student s LEFT JOIN s.phone p LEFT JOIN s.homeAddress h "
+            + "WHERE a.course = :course ORDER BY a.createdAt")
+    Stream<RosterRow> streamRoster(CourseType course);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new no.odit.gatevas.dao.RosterRow(t.shortName, t.longName, s.id, s.email, s.firstName, s.lastName, "
+            + "s.birthDate, s.socialSecurityNumber, p.phoneNumber, h.id, h.streetAddress, h.zipCode, h.city, a.status, "
+            + "a.uptake, a.createdAt) "
+            + "FROM CourseApplication a JOIN a.course t JOIN a.student s LEFT JOIN s.phone p LEFT JOIN s.homeAddress h "
+            + "WHERE a.status IN :statuses AND t.csvFile IS NOT NULL AND t.csvFile <> 'null' ORDER BY t.shortName, a.createdAt")
+    Stream<RosterRow> streamApplications(Collection<ApplicationStatus> statuses);
+
+    // Accepts waitlisted applications of students already enrolled in a course of the type
+    @Modifying
+    @Transactional
+    @Query("UPDATE CourseApplication a SET a.status = no.odit.gatevas.type.ApplicationStatus.ACCEPTED, "
+            + "a.updatedAt = CURRENT_TIMESTAMP WHERE a.status = no.odit.gatevas.type.ApplicationStatus.WAITLIST "
+            + "AND EXISTS (SELECT e.id FROM Enrollment e WHERE e.student = a.student AND e.course.type = a.course)")
+    int acceptEnrolledApplications();
+
+    // Emails of students waitlisted for course type while already enrolled in a course of the type
+    @Query("SELECT LOWER(s.email) FROM CourseApplication a JOIN a.student s WHERE a.course = :course "
+            + "AND a.status = no.odit.gatevas.type.ApplicationStatus.WAITLIST "
+            + "AND EXISTS (SELECT e.id FROM Enrollment e WHERE e.student = s AND e.course.type = :course)")
+    Set<String> findEnrolledWaitlistEmails(CourseType course);
+
 }
\ No newline at end of file
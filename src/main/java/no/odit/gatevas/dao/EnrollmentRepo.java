@@ -4,11 +4,18 @@ import no.odit.gatevas.model.Classroom;
 import no.odit.gatevas.model.RoomLink;
 import no.odit.gatevas.model.Student;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface EnrollmentRepo extends JpaRepository<RoomLink, UUID> {
@@ -19,4 +26,29 @@ public interface EnrollmentRepo extends JpaRepository<RoomLink, UUID> {
 
     List<RoomLink> findByCourse(Classroom course);
 
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new no.odit.gatevas.dao.RosterRow(c.id, e.createdAt, CONCAT(t.shortName, '-', c.period), "
+            + "CONCAT(t.longName, ' ', c.period), s.id, s.email, s.firstName, s.lastName, s.birthDate, s.socialSecurityNumber, "
+            + "p.phoneNumber, h.id, h.streetAddress, h.zipCode, h.city, a.status, a.uptake, a.createdAt) "
+            + "FROM Enrollment e JOIN e.course c JOIN c.type t JOIN e.student s LEFT JOIN s.phone p LEFT JOIN s.homeAddress h "
+            + "LEFT JOIN CourseApplication a ON a.student = s AND a.course = t "
+            + "WHERE c IN :courses ORDER BY c.createdAt, c.id, e.createdAt")
+    Stream<RosterRow> streamRosters(Collection<Classroom> courses);
+
+    // Enrollments of courses with their students, phones and home addresses
+    @Query("SELECT e FROM Enrollment e JOIN FETCH e.course c JOIN FETCH e.student s LEFT JOIN FETCH s.phone "
+            + "LEFT JOIN FETCH s.homeAddress WHERE c IN :courses ORDER BY c.createdAt, e.createdAt")
+    List<RoomLink> findRosters(Collection<Classroom> courses);
+
+    @Query("SELECT e.student.id AS studentId, e.course.id AS courseId FROM Enrollment e")
+    List<EnrollmentKey> findAllKeys();
+
+    interface EnrollmentKey {
+
+        UUID getStudentId();
+
+        UUID getCourseId();
+
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package no.odit.gatevas.dao;
+
+import lombok.Getter;
+import no.odit.gatevas.type.ApplicationStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Student with phone, home address and application status, read in one join for roster exports
+@Getter
+public class RosterRow {
+
+    // Course and time of enrollment, null for course type rosters
+    private final UUID courseId;
+
+    private final LocalDateTime enrolledAt;
+
+    // Short and long name of course, or of course type for course type rosters
+    private final String courseCode;
+
+    private final String courseName;
+
+    private final UUID studentId;
+
+    private final String email;
+
+    private final String firstName;
+
+    private final String lastName;
+
+    private final LocalDate birthDate;
+
+    private final String socialSecurityNumber;
+
+    private final Integer phoneNumber;
+
+    private final UUID homeAddressId;
+
+    private final String streetAddress;
+
+    private final Integer zipCode;
+
+    private final String city;
+
+    private final ApplicationStatus status;
+
+    private final Boolean uptake;
+
+    private final LocalDateTime appliedAt;
+
+    // Enrolled student in course roster
+    public RosterRow(UUID courseId, LocalDateTime enrolledAt, String courseCode, String courseName, UUID studentId,
+                     String email, String firstName, String lastName, LocalDate birthDate, String socialSecurityNumber,
+                     Integer phoneNumber, UUID homeAddressId, String streetAddress, Integer zipCode, String city,
+                     ApplicationStatus status, Boolean uptake, LocalDateTime appliedAt) {
+        this.courseId = courseId;
+        this.enrolledAt = enrolledAt;
+        this.courseCode = courseCode;
+        this.courseName = courseName;
+        this.studentId = studentId;
+        this.email = email;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.birthDate = birthDate != null && birthDate.isAfter(LocalDate.now()) ? birthDate.minusYears(100) : birthDate;
+        this.socialSecurityNumber = socialSecurityNumber;
+        this.phoneNumber = phoneNumber;
+        this.homeAddressId = homeAddressId;
+        this.streetAddress = streetAddress;
+        this.zipCode = zipCode;
+        this.city = city;
+        this.status = status;
+        this.uptake = uptake;
+        this.appliedAt = appliedAt;
+    }
+
+    // Applicant in course type roster
+    public RosterRow(String courseCode, String courseName, UUID studentId, String email, String firstName, String lastName,
+                     LocalDate birthDate, String socialSecurityNumber, Integer phoneNumber, UUID homeAddressId,
+                     String streetAddress, Integer zipCode, String city, ApplicationStatus status, Boolean uptake,
+                     LocalDateTime appliedAt) {
+        this(null, null, courseCode, courseName, studentId, email, firstName, lastName, birthDate, socialSecurityNumber,
+                phoneNumber, homeAddressId, streetAddress, zipCode, city, status, uptake, appliedAt);
+    }
+
+    public boolean hasPhone() {
+        return phoneNumber != null && phoneNumber != 0;
+    }
+
+    public boolean hasHomeAddress() {
+        return homeAddressId != null;
+    }
+
+}
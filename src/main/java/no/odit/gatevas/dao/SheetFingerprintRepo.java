@@ -0,0 +1,15 @@
+package no.odit.gatevas.dao;
+
+import no.odit.gatevas.model.SheetFingerprint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface SheetFingerprintRepo extends JpaRepository<SheetFingerprint, UUID> {
+
+    List<SheetFingerprint> findBySheetKey(String sheetKey);
+
+}
@@ -1,11 +1,14 @@
 package no.odit.gatevas.dao;
 
 import no.odit.gatevas.model.Student;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -30,4 +33,48 @@ public interface StudentRepo extends JpaRepository<Student, UUID> {
 
     Optional<Student> findByLoginIsNotNullAndLogin(String login);
 
+    List<Student> findBySocialSecurityIndex(String socialSecurityIndex);
+
+    @Query("SELECT s.id AS id, s.email AS email, s.login AS login, s.firstName AS firstName, s.lastName AS lastName, "
+            + "s.birthDate AS birthDate, s.socialSecurityIndex AS socialSecurityIndex FROM Student s")
+    List<StudentKey> findAllKeys();
+
+    // Social security numbers not encrypted with prefix or without blind index, in id order after the given id
+    @Query("SELECT s.id AS id, s.socialSecurityNumber AS value FROM Student s WHERE s.id > :after "
+            + "AND s.socialSecurityNumber IS NOT NULL AND (s.socialSecurityNumber NOT LIKE CONCAT(:prefix, '%') "
+            + "OR s.socialSecurityIndex IS NULL) ORDER BY s.id")
+    List<EncryptedField> findSocialSecurityNumbersToMigrate(UUID after, String prefix, Pageable pageable);
+
+    // Replaces social security number and its blind index unless the number changed since it was read
+    @Modifying
+    @Query("UPDATE Student s SET s.socialSecurityNumber = :replacement, s.socialSecurityIndex = :index "
+            + "WHERE s.id = :id AND s.socialSecurityNumber = :current")
+    int replaceSocialSecurityNumber(UUID id, String current, String replacement, String index);
+
+    interface EncryptedField {
+
+        UUID getId();
+
+        String getValue();
+
+    }
+
+    interface StudentKey {
+
+        UUID getId();
+
+        String getEmail();
+
+        String getLogin();
+
+        String getFirstName();
+
+        String getLastName();
+
+        LocalDate getBirthDate();
+
+        String getSocialSecurityIndex();
+
+    }
+
 }
\ No newline at end of file
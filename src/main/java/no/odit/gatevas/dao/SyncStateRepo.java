@@ -0,0 +1,20 @@
+package no.odit.gatevas.dao;
+
+import no.odit.gatevas.model.SyncState;
+import no.odit.gatevas.type.SyncScope;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface SyncStateRepo extends JpaRepository<SyncState, UUID> {
+
+    Optional<SyncState> findByScopeAndTargetId(SyncScope scope, UUID targetId);
+
+    List<SyncState> findByScopeAndTargetIdIn(SyncScope scope, Collection<UUID> targetIds);
+
+}
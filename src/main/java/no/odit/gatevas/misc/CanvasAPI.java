@@ -1,15 +1,35 @@
 package no.odit.gatevas.misc;
 
 import edu.ksu.canvas.CanvasApiFactory;
+import edu.ksu.canvas.interfaces.AccountReader;
+import edu.ksu.canvas.interfaces.CanvasReader;
+import edu.ksu.canvas.interfaces.CanvasWriter;
+import edu.ksu.canvas.interfaces.RoleReader;
+import edu.ksu.canvas.model.Account;
+import edu.ksu.canvas.model.Role;
 import edu.ksu.canvas.oauth.OauthToken;
 import edu.ksu.canvas.oauth.OauthTokenRefresher;
 import edu.ksu.canvas.oauth.RefreshableOauthToken;
+import edu.ksu.canvas.requestOptions.ListRolesOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+
 @Component
+@Slf4j
 public class CanvasAPI {
 
+    @Autowired
+    private CanvasThrottle canvasThrottle;
+
     @Value("${canvas_lms.client_id}")
     private String clientId;
 
@@ -25,14 +45,92 @@ public class CanvasAPI {
     @Value("${canvas_lms.base_url}")
     private String canvasBaseUrl;
 
-    public OauthToken getOauthToken() {
-        OauthTokenRefresher tokenRefresher = new OauthTokenRefresher(clientId, clientSecret, canvasBaseUrl);
-        OauthToken oauthToken = new RefreshableOauthToken(tokenRefresher, refreshToken);
+    @Value("${canvas_lms.token_ttl_minutes:55}")
+    private long tokenTtlMinutes;
+
+    private OauthToken oauthToken;
+
+    private LocalDateTime tokenExpiresAt;
+
+    private CanvasApiFactory apiFactory;
+
+    private Account rootAccount;
+
+    private Role studentRole;
+
+    // Get shared OAuth token and refresh it when expired
+    public synchronized OauthToken getOauthToken() {
+        if (oauthToken == null) {
+            OauthTokenRefresher tokenRefresher = new OauthTokenRefresher(clientId, clientSecret, canvasBaseUrl);
+            oauthToken = new RefreshableOauthToken(tokenRefresher, refreshToken);
+            tokenExpiresAt = LocalDateTime.now().plusMinutes(tokenTtlMinutes);
+        } else if (LocalDateTime.now().isAfter(tokenExpiresAt)) {
+            oauthToken.refresh();
+            tokenExpiresAt = LocalDateTime.now().plusMinutes(tokenTtlMinutes);
+            log.debug("Refreshed Canvas LMS access token.");
+        }
         return oauthToken;
     }
 
-    public CanvasApiFactory getApiFactory() {
-        CanvasApiFactory apiFactory = new CanvasApiFactory(canvasBaseUrl);
+    // Get shared API factory
+    public synchronized CanvasApiFactory getApiFactory() {
+        if (apiFactory == null) {
+            apiFactory = new CanvasApiFactory(canvasBaseUrl);
+        }
         return apiFactory;
     }
-}
\ No newline at end of file
+
+    // Get API reader with the shared token
+    public <T extends CanvasReader> T getReader(Class<T> type) {
+        return throttled(type, getApiFactory().getReader(type, getOauthToken()));
+    }
+
+    // Get paginated API reader with the shared token
+    public <T extends CanvasReader> T getReader(Class<T> type, int pageSize) {
+        return throttled(type, getApiFactory().getReader(type, getOauthToken(), pageSize));
+    }
+
+    // Get API writer with the shared token
+    public <T extends CanvasWriter> T getWriter(Class<T> type) {
+        return throttled(type, getApiFactory().getWriter(type, getOauthToken()));
+    }
+
+    // Routes every API call through the shared traffic governor
+    @SuppressWarnings("unchecked")
+    private <T> T throttled(Class<T> type, T target) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) return method.invoke(target, args);
+                try {
+                    Object result = canvasThrottle.execute(() -> method.invoke(target, args));
+                    // Keep fluent calls on the proxy
+                    return result == target ? proxy : result;
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+        });
+    }
+
+    // Get root account, also used as connection test
+    public synchronized Account getRootAccount() throws IOException {
+        if (rootAccount == null) {
+            AccountReader acctReader = getReader(AccountReader.class);
+            rootAccount = acctReader.getSingleAccount("1").get();
+            log.debug("Connected to Canvas LMS API at '" + rootAccount.getName() + "'.");
+        }
+        return rootAccount;
+    }
+
+    // Get student role in root account
+    public synchronized Role getStudentRole() throws IOException {
+        if (studentRole == null) {
+            RoleReader roleReader = getReader(RoleReader.class, 100);
+            ListRolesOptions roleOptions = new ListRolesOptions("1");
+            studentRole = roleReader.listRoles(roleOptions).stream().filter(role -> role.getBaseRoleType().equalsIgnoreCase("student")
+                    || role.getLabel().equalsIgnoreCase("student")).findFirst().orElse(null);
+        }
+        return studentRole;
+    }
+}
@@ -0,0 +1,21 @@
+package no.odit.gatevas.misc;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+// Canvas LMS answered a request with an unexpected HTTP status
+@Getter
+public class CanvasResponseException extends IOException {
+
+    private final int status;
+
+    private final String body;
+
+    public CanvasResponseException(int status, String body) {
+        super("Canvas LMS request failed with response code " + status + ".");
+        this.status = status;
+        this.body = body != null ? body : "";
+    }
+
+}
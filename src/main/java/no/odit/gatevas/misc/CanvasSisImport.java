@@ -0,0 +1,150 @@
+package no.odit.gatevas.misc;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+@Component
+@Slf4j
+public class CanvasSisImport {
+
+    private static final Set<String> SUCCESS_STATES = Set.of("imported", "imported_with_messages");
+
+    private static final Set<String> FAILURE_STATES = Set.of("aborted", "failed", "failed_with_messages");
+
+    private final Gson gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+
+    @Autowired
+    private CanvasAPI canvasAPI;
+
+    @Autowired
+    private CanvasThrottle canvasThrottle;
+
+    @Value("${canvas_lms.base_url}")
+    private String canvasBaseUrl;
+
+    @Value("${canvas_lms.sis_import.poll_seconds:5}")
+    private int pollSeconds;
+
+    @Value("${canvas_lms.sis_import.timeout_minutes:30}")
+    private int timeoutMinutes;
+
+    // Uploads a SIS import zip and waits until Canvas LMS has processed it
+    public boolean importZip(byte[] zip) throws IOException, InterruptedException {
+        SisImport sisImport = upload(zip);
+        log.debug("Created SIS import " + sisImport.getId() + " (" + zip.length + " bytes).");
+
+        LocalDateTime timeout = LocalDateTime.now().plusMinutes(timeoutMinutes);
+        while (!isFinished(sisImport)) {
+            if (LocalDateTime.now().isAfter(timeout)) {
+                log.error("SIS import " + sisImport.getId() + " did not finish within " + timeoutMinutes + " minutes.");
+                return false;
+            }
+            Thread.sleep(pollSeconds * 1000L);
+            sisImport = getStatus(sisImport.getId());
+            log.debug("SIS import " + sisImport.getId() + " is " + sisImport.getWorkflowState()
+                    + " (" + sisImport.getProgress() + "%).");
+        }
+
+        if (SUCCESS_STATES.contains(sisImport.getWorkflowState())) {
+            log.info("SIS import " + sisImport.getId() + " finished as " + sisImport.getWorkflowState() + ".");
+            return true;
+        }
+        log.error("SIS import " + sisImport.getId() + " finished as " + sisImport.getWorkflowState() + ".");
+        return false;
+    }
+
+    // Posts zip file to the SIS imports endpoint
+    private SisImport upload(byte[] zip) throws IOException, InterruptedException {
+        return throttled(() -> post(zip));
+    }
+
+    private SisImport post(byte[] zip) throws IOException {
+        URL url = new URL(canvasBaseUrl + "/api/v1/accounts/1/sis_imports?import_type=instructure_csv&extension=zip");
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod("POST");
+        con.setDoOutput(true);
+        con.setRequestProperty("Authorization", "Bearer " + canvasAPI.getOauthToken().getAccessToken());
+        con.setRequestProperty("Content-Type", "application/zip");
+        con.setFixedLengthStreamingMode(zip.length);
+        try (OutputStream out = con.getOutputStream()) {
+            out.write(zip);
+        }
+        return readResponse(con);
+    }
+
+    // Gets current state of SIS import
+    private SisImport getStatus(long id) throws IOException, InterruptedException {
+        return throttled(() -> get(id));
+    }
+
+    private SisImport get(long id) throws IOException {
+        URL url = new URL(canvasBaseUrl + "/api/v1/accounts/1/sis_imports/" + id);
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestProperty("Authorization", "Bearer " + canvasAPI.getOauthToken().getAccessToken());
+        return readResponse(con);
+    }
+
+    // Runs request through the shared traffic governor
+    private SisImport throttled(Callable<SisImport> request) throws IOException, InterruptedException {
+        try {
+            return canvasThrottle.execute(request);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private SisImport readResponse(HttpURLConnection con) throws IOException {
+        int responseCode = con.getResponseCode();
+        canvasThrottle.record(con.getHeaderField("X-Rate-Limit-Remaining"), con.getHeaderField("X-Request-Cost"));
+        if (responseCode != 200) {
+            throw new CanvasResponseException(responseCode, readError(con));
+        }
+        try (Reader reader = new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, SisImport.class);
+        }
+    }
+
+    // Error body of a failed request, empty when there is none
+    private String readError(HttpURLConnection con) throws IOException {
+        if (con.getErrorStream() == null) return "";
+        try (InputStream in = con.getErrorStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private boolean isFinished(SisImport sisImport) {
+        return SUCCESS_STATES.contains(sisImport.getWorkflowState()) || FAILURE_STATES.contains(sisImport.getWorkflowState());
+    }
+
+    @Getter
+    private static class SisImport {
+
+        private long id;
+
+        private String workflowState;
+
+        private Integer progress;
+
+    }
+
+}
@@ -0,0 +1,264 @@
+package no.odit.gatevas.misc;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Shared governor of Canvas LMS traffic: bounds concurrent requests, paces them by the reported quota
+// and retries throttled requests. A paginated reader call is one request here, it holds one slot for
+// all of its pages and is retried from the first page when any page is throttled. Throttling is judged
+// by HTTP status, which the canvas-api readers do not expose, so their calls are limited and paced but
+// never retried.
+@Component
+@Slf4j
+public class CanvasThrottle {
+
+    // Outcome of a request, only successes raise the concurrency limit
+    public enum Outcome {
+        SUCCESS, FAILURE, THROTTLED
+    }
+
+    @Value("${canvas_lms.throttle.max_concurrency:8}")
+    private int maxConcurrency;
+
+    @Value("${canvas_lms.throttle.low_quota:200}")
+    private double lowQuota;
+
+    @Value("${canvas_lms.throttle.refill_per_second:10}")
+    private double refillPerSecond;
+
+    @Value("${canvas_lms.throttle.max_retries:5}")
+    private int maxRetries;
+
+    @Value("${canvas_lms.throttle.backoff_millis:500}")
+    private long backoffMillis;
+
+    @Value("${canvas_lms.throttle.backoff_max_millis:30000}")
+    private long backoffMaxMillis;
+
+    // Current concurrency limit, adapted to throttling
+    private int limit;
+
+    private int inFlight;
+
+    private int successes;
+
+    // Last reported remaining quota, negative when unknown
+    private double remaining = -1;
+
+    // Time in millis when requests may be sent again
+    private long pausedUntil;
+
+    // Reactive requests waiting for a slot, in arrival order
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+    @PostConstruct
+    private void init() {
+        limit = maxConcurrency;
+    }
+
+    // Runs a Canvas LMS request within the current limits and retries it when throttled
+    public <T> T execute(Callable<T> request) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            acquire();
+            Outcome outcome = Outcome.FAILURE;
+            try {
+                T result = request.call();
+                outcome = Outcome.SUCCESS;
+                return result;
+            } catch (Exception ex) {
+                if (isThrottled(ex)) outcome = Outcome.THROTTLED;
+                if (outcome != Outcome.THROTTLED || attempt >= maxRetries) throw ex;
+            } finally {
+                release(outcome);
+            }
+            long delay = getBackoff(attempt);
+            log.debug("Canvas LMS request was throttled, retrying in " + delay + " ms (attempt " + (attempt + 1)
+                    + " of " + maxRetries + ").");
+            Thread.sleep(delay);
+        }
+    }
+
+    // Reserves a request slot without blocking a thread. The permit is handed to the subscriber together with
+    // the pause it has to wait before sending, and must be released once when the request ends. Cancelling
+    // while waiting leaves the queue, cancelling after the slot was granted gives the slot back.
+    public Mono<Permit> permit() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            sink.onCancel(() -> cancel(waiter));
+            Permit granted = null;
+            synchronized (this) {
+                if (waiter.cancelled) return;
+                if (inFlight < limit && waiters.isEmpty()) {
+                    inFlight++;
+                    granted = waiter.permit = new Permit(getPause());
+                } else {
+                    waiters.add(waiter);
+                }
+            }
+            if (granted != null) sink.success(granted);
+        });
+    }
+
+    // Records rate limit headers from a Canvas LMS response
+    public synchronized void record(String remainingHeader, String costHeader) {
+        double value = parseHeader(remainingHeader);
+        if (Double.isNaN(value)) return;
+        remaining = value;
+        double cost = parseHeader(costHeader);
+        if (Double.isNaN(cost)) cost = 0;
+
+        // Pace requests until the bucket has refilled above the low quota
+        if (remaining < lowQuota) {
+            long pause = (long) ((lowQuota - remaining + cost) / refillPerSecond * 1000);
+            pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + pause);
+        }
+    }
+
+    // Parses a numeric rate limit header, NaN when missing or invalid
+    public static double parseHeader(String header) {
+        if (header == null) return Double.NaN;
+        try {
+            double value = Double.parseDouble(header.trim());
+            return Double.isFinite(value) ? value : Double.NaN;
+        } catch (NumberFormatException ex) {
+            log.warn("Invalid Canvas LMS rate limit header '" + header + "'.");
+            return Double.NaN;
+        }
+    }
+
+    // Current concurrency limit
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    // Last reported remaining quota, negative when unknown
+    public synchronized double getRemaining() {
+        return remaining;
+    }
+
+    // Waits for a free request slot and any active pause
+    private void acquire() throws InterruptedException {
+        long pause;
+        synchronized (this) {
+            while (inFlight >= limit) {
+                wait();
+            }
+            inFlight++;
+            pause = getPause();
+        }
+        if (pause > 0) Thread.sleep(pause);
+    }
+
+    // Frees request slot, halving the limit when throttled and growing it after a full window of successes.
+    // Freed slots go to waiting reactive requests first, which are completed outside the lock.
+    private void release(Outcome outcome) {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (outcome == Outcome.THROTTLED) {
+                limit = Math.max(1, limit / 2);
+                successes = 0;
+                log.debug("Canvas LMS concurrency limit lowered to " + limit + ".");
+            } else if (outcome == Outcome.SUCCESS && ++successes >= limit && limit < maxConcurrency
+                    && (remaining < 0 || remaining >= lowQuota)) {
+                limit++;
+                successes = 0;
+            }
+            while (inFlight < limit && !waiters.isEmpty()) {
+                Waiter waiter = waiters.poll();
+                inFlight++;
+                waiter.permit = new Permit(getPause());
+                granted.add(waiter);
+            }
+            notifyAll();
+        }
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    // Removes a cancelled waiter, or gives back the slot it was granted but never received
+    private void cancel(Waiter waiter) {
+        Permit granted;
+        synchronized (this) {
+            waiter.cancelled = true;
+            waiters.remove(waiter);
+            granted = waiter.permit;
+        }
+        if (granted != null) granted.release(Outcome.FAILURE);
+    }
+
+    // Millis left of the active pause, guarded by this
+    private long getPause() {
+        return Math.max(0, pausedUntil - System.currentTimeMillis());
+    }
+
+    // Exponential backoff with full jitter, anywhere between zero and the capped exponential delay
+    private long getBackoff(int attempt) {
+        long ceiling = Math.min(backoffMaxMillis, backoffMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    // Whether a request failed because it was throttled, judged by the HTTP status in the cause chain
+    public static boolean isThrottled(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CanvasResponseException) {
+                CanvasResponseException response = (CanvasResponseException) cause;
+                return isThrottled(response.getStatus(), response.getBody());
+            }
+            if (cause instanceof WebClientResponseException) {
+                WebClientResponseException response = (WebClientResponseException) cause;
+                return isThrottled(response.getRawStatusCode(), response.getResponseBodyAsString());
+            }
+        }
+        return false;
+    }
+
+    // Canvas LMS answers throttled requests with 429 or 403 Forbidden (Rate Limit Exceeded).
+    // Other 401 and 403 responses are real authorization errors and fail without retrying.
+    public static boolean isThrottled(int status, String body) {
+        return status == 429 || (status == 403 && body != null && body.contains("Rate Limit Exceeded"));
+    }
+
+    // Request slot held by a reactive request, releasing it more than once has no effect
+    public class Permit {
+
+        @Getter
+        private final long pauseMillis;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long pauseMillis) {
+            this.pauseMillis = pauseMillis;
+        }
+
+        public void release(Outcome outcome) {
+            if (released.compareAndSet(false, true)) CanvasThrottle.this.release(outcome);
+        }
+    }
+
+    // Reactive request waiting for a slot, guarded by the throttle
+    private static class Waiter {
+
+        private final MonoSink<Permit> sink;
+        private Permit permit;
+        private boolean cancelled;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+}
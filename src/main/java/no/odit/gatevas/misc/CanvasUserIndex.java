@@ -0,0 +1,114 @@
+package no.odit.gatevas.misc;
+
+import edu.ksu.canvas.interfaces.UserReader;
+import edu.ksu.canvas.model.User;
+import edu.ksu.canvas.requestOptions.GetUsersInAccountOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Component
+@Slf4j
+public class CanvasUserIndex {
+
+    @Autowired
+    private CanvasAPI canvasAPI;
+
+    @Value("${canvas_lms.user_index.refresh_minutes:60}")
+    private long refreshMinutes;
+
+    private volatile Snapshot snapshot;
+
+    // Find user by login id or email address
+    public Optional<User> findByLoginOrEmail(String email) throws IOException {
+        if (email == null) return Optional.empty();
+        Snapshot current = getSnapshot();
+        String key = email.trim().toLowerCase();
+        User user = current.byLogin.get(key);
+        if (user == null) user = current.byEmail.get(key);
+        return Optional.ofNullable(user);
+    }
+
+    // Find user by full name
+    public Optional<User> findByName(String fullName) throws IOException {
+        if (fullName == null) return Optional.empty();
+        return Optional.ofNullable(getSnapshot().byName.get(normalizeName(fullName)));
+    }
+
+    // Looks up a single user in Canvas LMS by login id or email address, bypassing the index
+    public Optional<User> lookup(String email) throws IOException {
+        if (email == null || email.isBlank()) return Optional.empty();
+        String key = email.trim().toLowerCase();
+        UserReader userReader = canvasAPI.getReader(UserReader.class, 10);
+        return userReader.getUsersInAccount(new GetUsersInAccountOptions("1").searchTerm(key)).stream()
+                .filter(user -> key.equalsIgnoreCase(user.getLoginId()) || key.equalsIgnoreCase(user.getEmail()))
+                .findFirst();
+    }
+
+    // Loads every user in the root account from Canvas LMS
+    public synchronized int refresh() throws IOException {
+        UserReader userReader = canvasAPI.getReader(UserReader.class, 100);
+        List<User> users = userReader.getUsersInAccount(new GetUsersInAccountOptions("1"));
+
+        Map<String, User> byLogin = new HashMap<>();
+        Map<String, User> byEmail = new HashMap<>();
+        Map<String, User> byName = new HashMap<>();
+        for (User user : users) {
+            if (user.getLoginId() != null) byLogin.putIfAbsent(user.getLoginId().trim().toLowerCase(), user);
+            if (user.getEmail() != null) byEmail.putIfAbsent(user.getEmail().trim().toLowerCase(), user);
+            if (user.getName() != null) byName.putIfAbsent(normalizeName(user.getName()), user);
+        }
+
+        snapshot = new Snapshot(byLogin, byEmail, byName, LocalDateTime.now());
+        log.debug("Indexed " + users.size() + " users from Canvas LMS.");
+        return users.size();
+    }
+
+    // Get current index and reload it when expired
+    private Snapshot getSnapshot() throws IOException {
+        Snapshot current = snapshot;
+        if (current == null || isExpired(current)) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || isExpired(current)) {
+                    refresh();
+                    current = snapshot;
+                }
+            }
+        }
+        return current;
+    }
+
+    private boolean isExpired(Snapshot current) {
+        return Duration.between(current.loadedAt, LocalDateTime.now()).toMinutes() >= refreshMinutes;
+    }
+
+    private static String normalizeName(String name) {
+        return name.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    private static class Snapshot {
+
+        private final Map<String, User> byLogin;
+        private final Map<String, User> byEmail;
+        private final Map<String, User> byName;
+        private final LocalDateTime loadedAt;
+
+        private Snapshot(Map<String, User> byLogin, Map<String, User> byEmail, Map<String, User> byName, LocalDateTime loadedAt) {
+            this.byLogin = byLogin;
+            this.byEmail = byEmail;
+            this.byName = byName;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+}
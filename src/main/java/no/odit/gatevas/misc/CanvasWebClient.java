@@ -0,0 +1,186 @@
+package no.odit.gatevas.misc;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+@Component
+@Slf4j
+public class CanvasWebClient {
+
+    @Autowired
+    private CanvasAPI canvasAPI;
+
+    @Autowired
+    private CanvasThrottle canvasThrottle;
+
+    @Value("${canvas_lms.base_url}")
+    private String canvasBaseUrl;
+
+    @Value("${canvas_lms.reactive.page_size:100}")
+    private int pageSize;
+
+    @Value("${canvas_lms.reactive.prefetch_pages:2}")
+    private int prefetchPages;
+
+    @Value("${canvas_lms.throttle.max_retries:5}")
+    private int maxRetries;
+
+    @Value("${canvas_lms.throttle.backoff_millis:500}")
+    private long backoffMillis;
+
+    @Value("${canvas_lms.throttle.backoff_max_millis:30000}")
+    private long backoffMaxMillis;
+
+    private WebClient webClient;
+
+    @PostConstruct
+    private void init() {
+        ObjectMapper mapper = new ObjectMapper()
+                .setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        webClient = WebClient.builder()
+                .baseUrl(canvasBaseUrl + "/api/v1")
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(mapper, MediaType.APPLICATION_JSON));
+                    codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024);
+                })
+                .filter(authorization())
+                .filter(rateLimit())
+                .build();
+    }
+
+    // Enroll user as student in course
+    public Mono<EnrollmentRecord> enroll(int courseId, int userId, long roleId) {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("enrollment[user_id]", String.valueOf(userId));
+        form.add("enrollment[type]", "StudentEnrollment");
+        form.add("enrollment[role_id]", String.valueOf(roleId));
+        form.add("enrollment[enrollment_state]", "active");
+        return send(webClient.post().uri("/courses/{id}/enrollments", courseId).body(BodyInserters.fromFormData(form))
+                .retrieve().bodyToMono(EnrollmentRecord.class));
+    }
+
+    // List student enrollments in course
+    public Flux<EnrollmentRecord> listEnrollments(int courseId) {
+        return list(UriComponentsBuilder.fromUriString(canvasBaseUrl + "/api/v1/courses/" + courseId + "/enrollments")
+                .queryParam("type[]", "StudentEnrollment"), EnrollmentRecord.class);
+    }
+
+    // Follows Link header pagination, fetching a few pages ahead of the subscriber
+    private <T> Flux<T> list(UriComponentsBuilder uri, Class<T> type) {
+        URI first = uri.queryParam("per_page", pageSize).encode().build().toUri();
+        return getPage(first, type)
+                .expand(page -> page.next != null ? getPage(page.next, type) : Mono.empty())
+                .concatMapIterable(page -> page.items, prefetchPages);
+    }
+
+    private <T> Mono<Page<T>> getPage(URI uri, Class<T> type) {
+        return send(webClient.get().uri(uri).retrieve().toEntityList(type))
+                .map(entity -> new Page<>(entity.getBody(), getNextLink(entity)));
+    }
+
+    // Holds a request slot of the governor for each attempt, waiting for it without blocking a thread,
+    // and retries throttled requests
+    private <T> Mono<T> send(Mono<T> request) {
+        return canvasThrottle.permit().flatMap(permit -> {
+            Mono<T> attempt = permit.getPauseMillis() > 0
+                    ? Mono.delay(Duration.ofMillis(permit.getPauseMillis())).then(request) : request;
+            return attempt
+                    .doOnSuccess(value -> permit.release(CanvasThrottle.Outcome.SUCCESS))
+                    .doOnError(ex -> permit.release(CanvasThrottle.isThrottled(ex)
+                            ? CanvasThrottle.Outcome.THROTTLED : CanvasThrottle.Outcome.FAILURE))
+                    .doFinally(signal -> permit.release(CanvasThrottle.Outcome.FAILURE));
+        }).retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(backoffMillis))
+                .maxBackoff(Duration.ofMillis(backoffMaxMillis))
+                .jitter(0.5)
+                .filter(CanvasThrottle::isThrottled)
+                .doBeforeRetry(signal -> log.debug("Canvas LMS request was throttled, retrying (attempt "
+                        + (signal.totalRetries() + 1) + " of " + maxRetries + ").")));
+    }
+
+    // Adds the shared access token, refreshing it off the event loop
+    private ExchangeFilterFunction authorization() {
+        return ExchangeFilterFunction.ofRequestProcessor(request ->
+                Mono.fromCallable(() -> canvasAPI.getOauthToken().getAccessToken())
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .map(token -> ClientRequest.from(request)
+                                .headers(headers -> headers.setBearerAuth(token))
+                                .build()));
+    }
+
+    // Reports rate limit headers to the shared governor
+    private ExchangeFilterFunction rateLimit() {
+        return ExchangeFilterFunction.ofResponseProcessor(response -> {
+            HttpHeaders headers = response.headers().asHttpHeaders();
+            canvasThrottle.record(headers.getFirst("X-Rate-Limit-Remaining"), headers.getFirst("X-Request-Cost"));
+            return Mono.just(response);
+        });
+    }
+
+    private URI getNextLink(ResponseEntity<?> entity) {
+        for (String links : entity.getHeaders().getOrEmpty(HttpHeaders.LINK)) {
+            for (String link : links.split(",")) {
+                String[] parts = link.split(";");
+                if (parts.length > 1 && parts[1].trim().equals("rel=\"next\"")) {
+                    return URI.create(parts[0].trim().replaceAll("^<|>$", ""));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static class Page<T> {
+
+        private final List<T> items;
+        private final URI next;
+
+        private Page(List<T> items, URI next) {
+            this.items = items != null ? items : List.of();
+            this.next = next;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class EnrollmentRecord {
+
+        private Long id;
+
+        private Integer userId;
+
+        private Integer courseId;
+
+        private String type;
+
+        private String enrollmentState;
+
+    }
+
+}
@@ -0,0 +1,123 @@
+package no.odit.gatevas.misc;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.jasypt.util.text.StrongTextEncryptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+// Encrypts sensitive student fields with AES-GCM, the key is derived once at startup.
+// Values without the version prefix are legacy jasypt ciphertexts and are still decrypted.
+// Blind indexes are keyed hashes of a value, equal for equal values and usable in equality lookups.
+@Component
+@Slf4j
+public class FieldCipher {
+
+    public static final String PREFIX = "v2:";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_BITS = 128;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s");
+
+    @Autowired
+    private StrongTextEncryptor textEncryptor;
+
+    @Value("${gatevas.security.crypto_key}")
+    private String encryptionKey;
+
+    @Value("${gatevas.security.crypto_salt:gatevas-field-cipher}")
+    private String encryptionSalt;
+
+    @Value("${gatevas.security.kdf_iterations:310000}")
+    private int iterations;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private SecretKey key;
+
+    private HashFunction indexFunction;
+
+    @PostConstruct
+    private void init() {
+        long startTime = System.currentTimeMillis();
+        PBEKeySpec spec = new PBEKeySpec(encryptionKey.toCharArray(), encryptionSalt.getBytes(StandardCharsets.UTF_8), iterations, 512);
+        try {
+            // First half is the encryption key, second half the blind index key
+            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            byte[] derived = factory.generateSecret(spec).getEncoded();
+            key = new SecretKeySpec(Arrays.copyOfRange(derived, 0, 32), "AES");
+            indexFunction = Hashing.hmacSha256(new SecretKeySpec(Arrays.copyOfRange(derived, 32, 64), "HmacSHA256"));
+            Arrays.fill(derived, (byte) 0);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to derive field cipher key.", ex);
+        } finally {
+            spec.clearPassword();
+        }
+
+        // Fail at startup rather than on the first student
+        String testData = "f62FWnF4aT6bsE6IF9hY";
+        if (!testData.equals(decrypt(encrypt(testData)))) {
+            throw new IllegalStateException("Field cipher test failed.");
+        }
+        log.debug("Derived field cipher key in " + (System.currentTimeMillis() - startTime) + " ms.");
+    }
+
+    // Encrypts value as v2:<base64 of IV and ciphertext>
+    public String encrypt(String value) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
+            byte[] output = ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array();
+            return PREFIX + Base64.getEncoder().encodeToString(output);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to encrypt field.", ex);
+        }
+    }
+
+    // Decrypts value of either version
+    public String decrypt(String value) {
+        if (!isCurrent(value)) return textEncryptor.decrypt(value);
+        try {
+            byte[] input = Base64.getDecoder().decode(value.substring(PREFIX.length()));
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, input, 0, IV_LENGTH));
+            byte[] decrypted = cipher.doFinal(input, IV_LENGTH, input.length - IV_LENGTH);
+            return new String(decrypted, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to decrypt field.", ex);
+        }
+    }
+
+    // Blind index of value as 64 hex characters, ignoring whitespace
+    public String blindIndex(String value) {
+        return indexFunction.hashString(WHITESPACE.matcher(value).replaceAll(""), StandardCharsets.UTF_8).toString();
+    }
+
+    // Whether value is encrypted with the current version
+    public boolean isCurrent(String value) {
+        return value.startsWith(PREFIX);
+    }
+
+}
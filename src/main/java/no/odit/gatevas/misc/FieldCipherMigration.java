@@ -0,0 +1,106 @@
+package no.odit.gatevas.misc;
+
+import lombok.extern.slf4j.Slf4j;
+import no.odit.gatevas.dao.StudentRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Re-encrypts legacy social security numbers with the current field cipher and fills missing blind indexes,
+// one batch per transaction
+@Component
+@Slf4j
+public class FieldCipherMigration {
+
+    @Autowired
+    private StudentRepo studentRepo;
+
+    @Autowired
+    private FieldCipher fieldCipher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ThreadPoolTaskExecutor taskExecutor;
+
+    @Value("${gatevas.security.migrate_on_startup:true}")
+    private boolean migrateOnStartup;
+
+    @Value("${gatevas.security.migrate_batch_size:500}")
+    private int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @EventListener(ApplicationReadyEvent.class)
+    private void init() {
+        if (!migrateOnStartup) return;
+        taskExecutor.execute(() -> {
+            try {
+                migrate();
+            } catch (Exception ex) {
+                log.error("Failed to migrate social security numbers.", ex);
+            }
+        });
+    }
+
+    // Migrates all outdated values, returns number of values migrated or -1 when already running
+    public int migrate() {
+        if (!running.compareAndSet(false, true)) return -1;
+        try {
+            long startTime = System.currentTimeMillis();
+            int migrated = 0;
+            int failed = 0;
+            UUID after = new UUID(0, 0);
+            while (true) {
+                List<StudentRepo.EncryptedField> fields = studentRepo.findSocialSecurityNumbersToMigrate(after,
+                        FieldCipher.PREFIX, PageRequest.of(0, batchSize));
+                if (fields.isEmpty()) break;
+                int[] result = transactionTemplate.execute(status -> reencrypt(fields));
+                migrated += result[0];
+                failed += result[1];
+                after = fields.get(fields.size() - 1).getId();
+                log.debug("Migrated " + migrated + " social security numbers...");
+            }
+            if (migrated > 0 || failed > 0) {
+                log.info("Migrated " + migrated + " social security numbers in "
+                        + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds (" + failed + " failed).");
+            }
+            return migrated;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Whether a migration is in progress
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private int[] reencrypt(List<StudentRepo.EncryptedField> fields) {
+        int migrated = 0;
+        int failed = 0;
+        for (StudentRepo.EncryptedField field : fields) {
+            try {
+                String value = fieldCipher.decrypt(field.getValue());
+                String replacement = fieldCipher.isCurrent(field.getValue()) ? field.getValue() : fieldCipher.encrypt(value);
+                migrated += studentRepo.replaceSocialSecurityNumber(field.getId(), field.getValue(), replacement,
+                        fieldCipher.blindIndex(value));
+            } catch (Exception ex) {
+                failed++;
+                log.warn("Failed to re-encrypt social security number of student " + field.getId() + ": " + ex.getMessage());
+            }
+        }
+        return new int[]{migrated, failed};
+    }
+
+}
@@ -0,0 +1,302 @@
+package no.odit.gatevas.misc;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
+import lombok.Getter;
+import no.odit.gatevas.model.*;
+import no.odit.gatevas.type.ApplicationStatus;
+import no.odit.gatevas.type.ImportChange;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Entities created or changed by a chunk of sheet rows, written together when the chunk is flushed.
+// Rows from several sheets may fill the same batch concurrently. A row that fails leaves no trace in the batch.
+@Getter
+public class ImportBatch {
+
+    private final StudentResolver resolver;
+
+    private final Consumer<Student> onStudent;
+
+    // Snapshot and change set of a dry run, null when writing to storage
+    private final ImportPlan plan;
+
+    private final Set<Phone> phones = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    private final Set<Student> students = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    private final Set<HomeAddress> homeAddresses = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    private final Set<CourseApplication> courseApplications = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    private final Set<SheetFingerprint> fingerprints = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    // Students of processed rows, in processing order
+    private final List<Student> rows = Collections.synchronizedList(new ArrayList<>());
+
+    private final Map<String, Student> studentsByEmail = new ConcurrentHashMap<>();
+
+    private final Map<String, Student> studentsByName = new ConcurrentHashMap<>();
+
+    private final Map<String, Student> studentsBySocialSecurityIndex = new ConcurrentHashMap<>();
+
+    private final Map<Student, HomeAddress> homeAddressByStudent = new ConcurrentHashMap<>();
+
+    private final Map<List<Object>, CourseApplication> applicationByStudent = new ConcurrentHashMap<>();
+
+    // Courses by type, kept for the whole import
+    private final Map<UUID, List<Classroom>> coursesByType = new ConcurrentHashMap<>();
+
+    // Rows of the same person never run at the same time
+    private final Striped<Lock> identityLocks = Striped.lock(64);
+
+    // Rows share the batch, writing it is exclusive
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    // Undo actions of the row in progress on this thread, most recent first
+    private final ThreadLocal<Deque<Runnable>> rowUndo = new ThreadLocal<>();
+
+    public ImportBatch(StudentResolver resolver, Consumer<Student> onStudent) {
+        this(resolver, onStudent, null);
+    }
+
+    public ImportBatch(StudentResolver resolver, Consumer<Student> onStudent, ImportPlan plan) {
+        this.resolver = resolver;
+        this.onStudent = onStudent;
+        this.plan = plan;
+    }
+
+    // Whether batch is a dry run that must never be written
+    public boolean isPlan() {
+        return plan != null;
+    }
+
+    // Processes a row while holding the locks of its identity keys, discarding its changes when it fails
+    public <T> T processRow(Collection<String> keys, Supplier<T> row) {
+        flushLock.readLock().lock();
+        try {
+            List<Lock> locks = Lists.newArrayList(identityLocks.bulkGet(keys));
+            locks.forEach(Lock::lock);
+            Deque<Runnable> undo = new ArrayDeque<>();
+            rowUndo.set(undo);
+            try {
+                return row.get();
+            } catch (RuntimeException ex) {
+                undo.forEach(Runnable::run);
+                throw ex;
+            } finally {
+                rowUndo.remove();
+                Lists.reverse(locks).forEach(Lock::unlock);
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    // Runs writer with no rows in progress
+    public void write(Runnable writer) {
+        flushLock.writeLock().lock();
+        try {
+            writer.run();
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    // Find student seen earlier in this batch by email
+    public Optional<Student> findStudent(String email) {
+        return Optional.ofNullable(studentsByEmail.get(StudentResolver.getEmailKey(email))).map(this::keepState);
+    }
+
+    // Find student seen earlier in this batch by name and birth
+    public Optional<Student> findStudent(String firstName, String lastName, LocalDate birthDate) {
+        return Optional.ofNullable(studentsByName.get(StudentResolver.getNameKey(firstName, lastName, birthDate)))
+                .map(this::keepState);
+    }
+
+    // Find student seen earlier in this batch by blind index of social security number
+    public Optional<Student> findStudentBySocialSecurityIndex(String socialSecurityIndex) {
+        if (socialSecurityIndex == null) return Optional.empty();
+        return Optional.ofNullable(studentsBySocialSecurityIndex.get(socialSecurityIndex)).map(this::keepState);
+    }
+
+    // Remember student for lookups by later rows
+    public void trackStudent(Student student, LocalDate birthDate) {
+        put(studentsByEmail, StudentResolver.getEmailKey(student.getEmail()), student);
+        put(studentsByName, StudentResolver.getNameKey(student.getFirstName(), student.getLastName(), birthDate), student);
+        trackSocialSecurityIndex(student);
+    }
+
+    // Mark student as created or changed
+    public void saveStudent(Student student) {
+        put(studentsByEmail, StudentResolver.getEmailKey(student.getEmail()), student);
+        trackSocialSecurityIndex(student);
+        add(students, student);
+    }
+
+    public void savePhone(Phone phone) {
+        add(phones, phone);
+    }
+
+    public Optional<HomeAddress> findHomeAddress(Student student) {
+        return Optional.ofNullable(homeAddressByStudent.get(student)).map(this::keepState);
+    }
+
+    public void saveHomeAddress(Student student, HomeAddress homeAddress) {
+        put(homeAddressByStudent, student, homeAddress);
+        add(homeAddresses, homeAddress);
+    }
+
+    public Optional<CourseApplication> findCourseApplication(Student student, CourseType courseType) {
+        return Optional.ofNullable(applicationByStudent.get(List.of(student, courseType.getId()))).map(this::keepState);
+    }
+
+    public void saveCourseApplication(Student student, CourseType courseType, CourseApplication courseApplication) {
+        put(applicationByStudent, List.of(student, courseType.getId()), courseApplication);
+        add(courseApplications, courseApplication);
+    }
+
+    // Find stored student, from the snapshot in a dry run
+    public Optional<Student> findStoredStudent(UUID id, Function<UUID, Optional<Student>> loader) {
+        return isPlan() ? plan.findStudent(id).map(this::keepState) : loader.apply(id);
+    }
+
+    // Find stored application, from the snapshot in a dry run
+    public Optional<CourseApplication> findStoredCourseApplication(Student student, CourseType courseType,
+                                                                   BiFunction<Student, CourseType, Optional<CourseApplication>> loader) {
+        return isPlan() ? plan.findCourseApplication(student, courseType).map(this::keepState) : loader.apply(student, courseType);
+    }
+
+    // Whether student is enrolled in course, from the snapshot in a dry run
+    public boolean isEnrolled(Student student, Classroom course, BiFunction<Student, Classroom, Optional<RoomLink>> loader) {
+        return isPlan() ? plan.isEnrolled(student, course) : loader.apply(student, course).isPresent();
+    }
+
+    // Record change for the dry run report
+    public void recordChange(ImportChange type, String firstName, String lastName, String email, String detail) {
+        if (!isPlan()) return;
+        ImportPlan.Change change = plan.addChange(type, firstName, lastName, email, detail);
+        onRowFailure(() -> plan.getChanges().remove(change));
+    }
+
+    // Get courses of type, loading them once per import
+    public List<Classroom> getCourses(CourseType courseType, Function<CourseType, List<Classroom>> loader) {
+        return coursesByType.computeIfAbsent(courseType.getId(), id -> loader.apply(courseType));
+    }
+
+    public void saveFingerprint(SheetFingerprint fingerprint) {
+        add(fingerprints, fingerprint);
+    }
+
+    public void addRow(Student student) {
+        add(rows, student);
+    }
+
+    // Number of rows processed since last flush
+    public int size() {
+        return rows.size();
+    }
+
+    // Forget pending entities after they have been written
+    public void clear() {
+        phones.clear();
+        students.clear();
+        homeAddresses.clear();
+        courseApplications.clear();
+        fingerprints.clear();
+        rows.clear();
+        studentsByEmail.clear();
+        studentsByName.clear();
+        studentsBySocialSecurityIndex.clear();
+        homeAddressByStudent.clear();
+        applicationByStudent.clear();
+    }
+
+    private void trackSocialSecurityIndex(Student student) {
+        if (student.getSocialSecurityIndex() != null) {
+            put(studentsBySocialSecurityIndex, student.getSocialSecurityIndex(), student);
+        }
+    }
+
+    // Adds value, removing it again if the row fails
+    private <T> void add(Collection<T> values, T value) {
+        if (values.add(value)) onRowFailure(() -> values.remove(value));
+    }
+
+    // Puts value, restoring the previous value if the row fails
+    private <K, V> void put(Map<K, V> map, K key, V value) {
+        V previous = map.put(key, value);
+        onRowFailure(() -> {
+            if (previous != null) map.put(key, previous);
+            else map.remove(key, value);
+        });
+    }
+
+    // Restores the imported fields of a shared student if the row fails
+    private Student keepState(Student student) {
+        String firstName = student.getFirstName();
+        String lastName = student.getLastName();
+        String login = student.getLogin();
+        String email = student.getEmail();
+        Phone phone = student.getPhone();
+        String socialSecurityNumber = student.getSocialSecurityNumber();
+        String socialSecurityIndex = student.getSocialSecurityIndex();
+        LocalDate birthDate;
+        try {
+            birthDate = student.getBirthDate();
+        } catch (IllegalStateException ex) {
+            // Invalid stored birth dates are cleared by any row, there is nothing worth restoring
+            birthDate = null;
+        }
+        LocalDate oldBirthDate = birthDate;
+        onRowFailure(() -> {
+            student.setFirstName(firstName);
+            student.setLastName(lastName);
+            student.setLogin(login);
+            student.setEmail(email);
+            student.setPhone(phone);
+            student.setBirthDate(oldBirthDate);
+            student.setSocialSecurityNumber(socialSecurityNumber);
+            student.setSocialSecurityIndex(socialSecurityIndex);
+        });
+        return student;
+    }
+
+    // Restores the imported fields of a shared address if the row fails
+    private HomeAddress keepState(HomeAddress homeAddress) {
+        String streetAddress = homeAddress.getStreetAddress();
+        Integer zipCode = homeAddress.getZipCode();
+        String city = homeAddress.getCity();
+        onRowFailure(() -> {
+            homeAddress.setStreetAddress(streetAddress);
+            homeAddress.setZipCode(zipCode);
+            homeAddress.setCity(city);
+        });
+        return homeAddress;
+    }
+
+    // Restores the status of a shared application if the row fails
+    private CourseApplication keepState(CourseApplication courseApplication) {
+        ApplicationStatus status = courseApplication.getStatus();
+        Boolean uptake = courseApplication.getUptake();
+        onRowFailure(() -> {
+            courseApplication.setStatus(status);
+            courseApplication.setUptake(uptake);
+        });
+        return courseApplication;
+    }
+
+    private void onRowFailure(Runnable undo) {
+        Deque<Runnable> actions = rowUndo.get();
+        if (actions != null) actions.push(undo);
+    }
+
+}
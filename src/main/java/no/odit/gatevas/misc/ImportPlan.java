@@ -0,0 +1,112 @@
+package no.odit.gatevas.misc;
+
+import lombok.Getter;
+import no.odit.gatevas.dao.EnrollmentRepo;
+import no.odit.gatevas.model.Classroom;
+import no.odit.gatevas.model.CourseApplication;
+import no.odit.gatevas.model.CourseType;
+import no.odit.gatevas.model.Student;
+import no.odit.gatevas.type.ImportChange;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+// Snapshot of storage an import is evaluated against in memory, and the changes it would make
+@Getter
+public class ImportPlan {
+
+    private static final String[] HEADERS = {"change", "first_name", "last_name", "email", "detail"};
+
+    private final Map<UUID, Student> students = new HashMap<>();
+
+    private final Map<List<UUID>, CourseApplication> applications = new HashMap<>();
+
+    private final Set<List<UUID>> enrollments = new HashSet<>();
+
+    private final Set<List<Object>> plannedEnrollments = new HashSet<>();
+
+    private final List<Change> changes = Collections.synchronizedList(new ArrayList<>());
+
+    public ImportPlan(Collection<Student> students, Collection<CourseApplication> applications,
+                      Collection<EnrollmentRepo.EnrollmentKey> enrollments) {
+        students.forEach(student -> this.students.put(student.getId(), student));
+        applications.forEach(application -> this.applications.put(
+                List.of(application.getStudent().getId(), application.getCourse().getId()), application));
+        enrollments.forEach(enrollment -> this.enrollments.add(List.of(enrollment.getStudentId(), enrollment.getCourseId())));
+    }
+
+    public Optional<Student> findStudent(UUID id) {
+        return Optional.ofNullable(students.get(id));
+    }
+
+    public Optional<CourseApplication> findCourseApplication(Student student, CourseType courseType) {
+        return Optional.ofNullable(applications.get(List.of(student.getId(), courseType.getId())));
+    }
+
+    public boolean isEnrolled(Student student, Classroom course) {
+        return enrollments.contains(List.of(student.getId(), course.getId()));
+    }
+
+    // Records enrollment of student in course unless stored or already planned, new students are keyed by instance
+    public synchronized void addEnrollment(Student student, Classroom course) {
+        if (isEnrolled(student, course)) return;
+        if (!plannedEnrollments.add(List.of(student.getId() != null ? student.getId() : student, course.getId()))) return;
+        addChange(ImportChange.NEW_ENROLLMENT, student.getFirstName(), student.getLastName(), student.getEmail(),
+                course.getShortName());
+    }
+
+    public Change addChange(ImportChange type, String firstName, String lastName, String email, String detail) {
+        Change change = new Change(type, firstName, lastName, email, detail);
+        changes.add(change);
+        return change;
+    }
+
+    // Number of changes by type
+    public Map<ImportChange, Integer> getSummary() {
+        Map<ImportChange, Integer> summary = new EnumMap<>(ImportChange.class);
+        for (ImportChange type : ImportChange.values()) summary.put(type, 0);
+        synchronized (changes) {
+            changes.forEach(change -> summary.merge(change.getType(), 1, Integer::sum));
+        }
+        return summary;
+    }
+
+    // Writes every change to a CSV file
+    public void export(File file) throws IOException {
+        try (CSVPrinter printer = new CSVPrinter(new FileWriter(file), CSVFormat.DEFAULT.withHeader(HEADERS))) {
+            synchronized (changes) {
+                for (Change change : changes) {
+                    printer.printRecord(change.getType(), change.getFirstName(), change.getLastName(),
+                            change.getEmail(), change.getDetail());
+                }
+            }
+        }
+    }
+
+    @Getter
+    public static class Change {
+
+        private final ImportChange type;
+
+        private final String firstName;
+
+        private final String lastName;
+
+        private final String email;
+
+        private final String detail;
+
+        private Change(ImportChange type, String firstName, String lastName, String email, String detail) {
+            this.type = type;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.email = email;
+            this.detail = detail;
+        }
+    }
+
+}
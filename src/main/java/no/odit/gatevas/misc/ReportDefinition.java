@@ -0,0 +1,111 @@
+package no.odit.gatevas.misc;
+
+import lombok.Getter;
+import no.odit.gatevas.type.ApplicationStatus;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Columns and filter of a CSV report, rows are read in the order of the query streaming them
+@Getter
+public class ReportDefinition<T> {
+
+    private final String name;
+
+    private final List<Column<T>> columns;
+
+    private final Predicate<T> filter;
+
+    private final char delimiter;
+
+    private ReportDefinition(Builder<T> builder) {
+        this.name = builder.name;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(builder.columns));
+        this.filter = builder.filter;
+        this.delimiter = builder.delimiter;
+    }
+
+    public static <T> Builder<T> builder(String name) {
+        return new Builder<>(name);
+    }
+
+    public String[] getHeaders() {
+        return columns.stream().map(Column::getHeader).toArray(String[]::new);
+    }
+
+    @Getter
+    public static class Column<T> {
+
+        private final String header;
+
+        private final Function<T, Object> value;
+
+        private Column(String header, Function<T, Object> value) {
+            this.header = header;
+            this.value = value;
+        }
+    }
+
+    public static class Builder<T> {
+
+        private final String name;
+
+        private final List<Column<T>> columns = new ArrayList<>();
+
+        private Predicate<T> filter = row -> true;
+
+        private char delimiter = ';';
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder<T> column(String header, Function<T, Object> value) {
+            columns.add(new Column<>(header, value));
+            return this;
+        }
+
+        // Formatted date, or placeholder when missing
+        public Builder<T> date(String header, Function<T, LocalDate> value, String pattern, String missing) {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+            return column(header, row -> {
+                LocalDate date = value.apply(row);
+                return date != null ? date.format(formatter) : missing;
+            });
+        }
+
+        // Status label, the status name when it has no label, or placeholder when missing
+        public Builder<T> status(String header, Function<T, ApplicationStatus> value, Map<ApplicationStatus, String> labels,
+                                 String missing) {
+            Map<ApplicationStatus, String> statusLabels = new EnumMap<>(ApplicationStatus.class);
+            statusLabels.putAll(labels);
+            return column(header, row -> {
+                ApplicationStatus status = value.apply(row);
+                return status != null ? statusLabels.getOrDefault(status, status.toString()) : missing;
+            });
+        }
+
+        // Rows must pass every filter
+        public Builder<T> filter(Predicate<T> filter) {
+            this.filter = this.filter.and(filter);
+            return this;
+        }
+
+        public Builder<T> delimiter(char delimiter) {
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        public ReportDefinition<T> build() {
+            return new ReportDefinition<>(this);
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package no.odit.gatevas.misc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Writes reports from streamed query results, keeping heap use independent of the number of rows
+@Component
+@Slf4j
+public class ReportExporter {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${gatevas.export.clear_interval:1000}")
+    private int clearInterval;
+
+    @Value("${gatevas.export.buffer_size:65536}")
+    private int bufferSize;
+
+    // Streams rows of query into a UTF-8 CSV file within one read-only transaction.
+    // The file is only created when at least one row passes the report filter.
+    public <T> int export(ReportDefinition<T> report, File file, Supplier<Stream<T>> query) throws IOException {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        long startTime = System.currentTimeMillis();
+        try {
+            int rows = readOnly.execute(status -> {
+                try (Stream<T> stream = query.get()) {
+                    return write(report, file, stream);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            log.debug("Exported " + rows + " rows of report '" + report.getName() + "' in "
+                    + (System.currentTimeMillis() - startTime) + " ms.");
+            return rows;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private <T> int write(ReportDefinition<T> report, File file, Stream<T> stream) throws IOException {
+        CSVFormat format = CSVFormat.DEFAULT.withAllowMissingColumnNames().withDelimiter(report.getDelimiter())
+                .withHeader(report.getHeaders());
+        CSVPrinter printer = null;
+        int read = 0;
+        int written = 0;
+        try {
+            for (T row : (Iterable<T>) stream::iterator) {
+
+                // Detach anything loaded while reading
+                if (++read % clearInterval == 0) entityManager.clear();
+
+                if (!report.getFilter().test(row)) continue;
+                if (printer == null) {
+                    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), bufferSize);
+                    out.write('\ufeff');
+                    printer = new CSVPrinter(out, format);
+                }
+                List<Object> values = new ArrayList<>(report.getColumns().size());
+                for (ReportDefinition.Column<T> column : report.getColumns()) {
+                    values.add(column.getValue().apply(row));
+                }
+                printer.printRecord(values);
+                written++;
+            }
+        } finally {
+            if (printer != null) printer.close();
+        }
+        return written;
+    }
+
+}
@@ -0,0 +1,133 @@
+package no.odit.gatevas.misc;
+
+import no.odit.gatevas.dao.RosterRow;
+import no.odit.gatevas.type.ApplicationStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Report definitions of the roster export commands
+@Component
+public class RosterReports {
+
+    private static final String MISSING = "mangler data";
+
+    private static final Map<ApplicationStatus, String> COURSE_LABELS = Map.of(
+            ApplicationStatus.ACCEPTED, "Ikke fullført",
+            ApplicationStatus.WITHDRAWN, "Avmeldt",
+            ApplicationStatus.FINISHED, "Fullført");
+
+    private static final Map<ApplicationStatus, String> OVERVIEW_LABELS = Map.of(
+            ApplicationStatus.ACCEPTED, "Ikke fullført",
+            ApplicationStatus.WITHDRAWN, "Avmeldt",
+            ApplicationStatus.WAITLIST, "Ukjent",
+            ApplicationStatus.FINISHED, "Fullført");
+
+    private static final Map<ApplicationStatus, String> TYPE_LABELS = Map.of(
+            ApplicationStatus.ACCEPTED, "Tilbudt plass",
+            ApplicationStatus.WITHDRAWN, "Avmeldt",
+            ApplicationStatus.WAITLIST, "Venteliste",
+            ApplicationStatus.FINISHED, "Tilbudt plass");
+
+    @Autowired
+    private FieldCipher fieldCipher;
+
+    // Applications of every course type with a sheet (global export)
+    public ReportDefinition<RosterRow> applications() {
+        return ReportDefinition.<RosterRow>builder("applications")
+                .column("Utdanning", RosterRow::getCourseName)
+                .column("Fornavn", RosterRow::getFirstName)
+                .column("Etternavn", RosterRow::getLastName)
+                .date("Fødselsdato", RosterRow::getBirthDate, "ddMMyy", MISSING)
+                .column("E-postadresse", RosterRow::getEmail)
+                .column("Mobilnummer", row -> row.getPhoneNumber() != null ? row.getPhoneNumber() : 0)
+                .column("Kurskode", RosterRow::getCourseCode)
+                .column("Dato", row -> row.getAppliedAt().format(DateTimeFormatter.ofPattern("dd.MM.yyyy")))
+                .status("Status", RosterRow::getStatus, Map.of(), "UNKNOWN")
+                .column("Opptak", row -> row.getUptake() == null ? "Ukjent" : row.getUptake() ? "Ja" : "Nei")
+                .build();
+    }
+
+    // Accepted students enrolled before time, once per email address (global custom-export)
+    public ReportDefinition<RosterRow> custom(LocalDateTime enrolledBefore) {
+        Set<String> exported = new HashSet<>();
+        return ReportDefinition.<RosterRow>builder("custom")
+                .filter(row -> !row.getEnrolledAt().isAfter(enrolledBefore))
+                .filter(row -> row.getStatus() != null && row.getStatus() != ApplicationStatus.WAITLIST
+                        && row.getStatus() != ApplicationStatus.WITHDRAWN)
+                .filter(row -> exported.add(row.getEmail().toLowerCase()))
+                .column("E-postadresse", RosterRow::getEmail)
+                .column("Kursnavn", RosterRow::getCourseName)
+                .column("Fornavn", RosterRow::getFirstName)
+                .column("Etternavn", RosterRow::getLastName)
+                .column("Tlf nr", row -> row.getPhoneNumber() != null ? row.getPhoneNumber() : 0)
+                .column("Kurskode", RosterRow::getCourseCode)
+                .column("Dato", row -> row.getEnrolledAt().format(DateTimeFormatter.ofPattern("dd.MM.yyyy")))
+                .status("Status", RosterRow::getStatus, Map.of(), "UNKNOWN")
+                .build();
+    }
+
+    // Enrolled students with social security number (global semester-export)
+    public ReportDefinition<RosterRow> semester() {
+        DateTimeFormatter birthFormat = DateTimeFormatter.ofPattern("ddMMyy");
+        return ReportDefinition.<RosterRow>builder("semester")
+                .column("Kurs", RosterRow::getCourseName)
+                .column("Fornavn", RosterRow::getFirstName)
+                .column("Etternavn", RosterRow::getLastName)
+                .column("Fødselsnummer", row -> row.getSocialSecurityNumber() != null
+                        ? fieldCipher.decrypt(row.getSocialSecurityNumber())
+                        : row.getBirthDate() != null ? row.getBirthDate().format(birthFormat) : "")
+                .column("E-postadresse", RosterRow::getEmail)
+                .column("Mobilnummer", row -> row.hasPhone() ? String.valueOf(row.getPhoneNumber()) : "")
+                .column("Adresse", row -> getAddress(row, ""))
+                .column("Poststed", row -> getPostal(row, ""))
+                .status("Status", RosterRow::getStatus, COURSE_LABELS, "")
+                .build();
+    }
+
+    // Enrolled students of course (global course-export)
+    public ReportDefinition<RosterRow> course() {
+        return roster("course", "ddMMyy", COURSE_LABELS, MISSING);
+    }
+
+    // Enrolled students of course (course overview)
+    public ReportDefinition<RosterRow> overview() {
+        return roster("overview", "dd.MM.yyyy", OVERVIEW_LABELS, MISSING);
+    }
+
+    // Applicants of course type (global type-export)
+    public ReportDefinition<RosterRow> courseType() {
+        return roster("type", "ddMMyy", TYPE_LABELS, "Venteliste");
+    }
+
+    private ReportDefinition<RosterRow> roster(String name, String birthPattern, Map<ApplicationStatus, String> labels,
+                                               String missingStatus) {
+        return ReportDefinition.<RosterRow>builder(name)
+                .column("E-postadresse", RosterRow::getEmail)
+                .column("Kurs", RosterRow::getCourseName)
+                .column("Fornavn", RosterRow::getFirstName)
+                .column("Etternavn", RosterRow::getLastName)
+                .date("Fodselsdato", RosterRow::getBirthDate, birthPattern, MISSING)
+                .column("Adresse", row -> getAddress(row, MISSING))
+                .column("Poststed", row -> getPostal(row, MISSING))
+                .column("Tlf nr", row -> row.hasPhone() ? String.valueOf(row.getPhoneNumber()) : MISSING)
+                .status("Status", RosterRow::getStatus, labels, missingStatus)
+                .build();
+    }
+
+    // Street address, or placeholder when missing or too short
+    private static String getAddress(RosterRow row, String missing) {
+        String address = row.getStreetAddress();
+        return row.hasHomeAddress() && address != null && address.length() > 2 ? address : missing;
+    }
+
+    private static String getPostal(RosterRow row, String missing) {
+        return row.hasHomeAddress() ? row.getZipCode() + " " + row.getCity() : missing;
+    }
+
+}
@@ -1,27 +1,63 @@
 package no.odit.gatevas.misc;
 
+import no.odit.gatevas.model.Classroom;
+import no.odit.gatevas.model.RoomLink;
 import no.odit.gatevas.model.Student;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Component
 public class SheetExportCSV {
 
+    private static final String[] USER_HEADERS = {"user_id", "password", "first_name", "last_name", "email", "login_id", "status"};
+
+    private static final String[] ENROLLMENT_HEADERS = {"course_id", "user_id", "role", "status"};
+
     // Creates user import CSV file in Canvas SIS format
     public void createCSVFile(File outputFile, List<Student> students) throws IOException {
-        String[] headers = {"user_id", "password", "first_name", "last_name", "email", "login_id", "status"};
         FileWriter out = new FileWriter(outputFile);
-        try (CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withHeader(headers))) {
+        try (CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withHeader(USER_HEADERS))) {
             for (Student student : students) {
-                printer.printRecord(student.getUserId(), student.getTmpPassword(), student.getFirstName(),
-                        student.getLastName(), student.getEmail(), student.getEmail(), "active");
+                printUser(printer, student);
             }
         }
     }
+
+    // Creates zipped users.csv and enrollments.csv in Canvas SIS format
+    public byte[] createSisImportZip(Classroom course, Collection<RoomLink> enrollments) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+
+            zip.putNextEntry(new ZipEntry("users.csv"));
+            CSVPrinter users = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(USER_HEADERS));
+            for (RoomLink enrollment : enrollments) {
+                printUser(users, enrollment.getStudent());
+            }
+            users.flush();
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("enrollments.csv"));
+            CSVPrinter courseEnrollments = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(ENROLLMENT_HEADERS));
+            for (RoomLink enrollment : enrollments) {
+                courseEnrollments.printRecord(course.getShortName(), enrollment.getStudent().getUserId(), "student", "active");
+            }
+            courseEnrollments.flush();
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private void printUser(CSVPrinter printer, Student student) throws IOException {
+        printer.printRecord(student.getUserId(), student.getTmpPassword(), student.getFirstName(),
+                student.getLastName(), student.getEmail(), student.getEmail(), "active");
+    }
 }
\ No newline at end of file
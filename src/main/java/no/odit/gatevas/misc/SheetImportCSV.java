@@ -2,29 +2,47 @@ package no.odit.gatevas.misc;
 
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import no.odit.gatevas.model.Classroom;
 import no.odit.gatevas.model.CourseType;
+import no.odit.gatevas.model.Phone;
+import no.odit.gatevas.model.SheetFingerprint;
 import no.odit.gatevas.model.Student;
 import no.odit.gatevas.service.CourseService;
+import no.odit.gatevas.service.EnrollmentService;
 import no.odit.gatevas.service.HomeAddressService;
 import no.odit.gatevas.service.PhoneService;
+import no.odit.gatevas.service.SheetFingerprintService;
 import no.odit.gatevas.service.StudentService;
+import no.odit.gatevas.type.ImportChange;
+import no.odit.gatevas.type.SheetColumn;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.jasypt.util.text.StrongTextEncryptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Component
 @Slf4j
@@ -43,146 +61,367 @@ public class SheetImportCSV {
     private HomeAddressService homeAddressService;
 
     @Autowired
-    private StrongTextEncryptor textEncryptor;
+    private EnrollmentService enrollmentService;
 
+    @Autowired
+    private FieldCipher fieldCipher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${gatevas.import.progress_interval:500}")
+    private int progressInterval;
+
+    @Autowired
+    private SheetFingerprintService sheetFingerprintService;
+
+    @Value("${gatevas.import.batch_size:100}")
+    private int batchSize;
+
+    @Value("${gatevas.import.skip_unchanged:true}")
+    private boolean skipUnchanged;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${gatevas.import.quarantine:true}")
+    private boolean quarantineEnabled;
+
+    // Imports never overlap, whether started by a command or by the sheet watcher
+    private final ReentrantLock importLock = new ReentrantLock();
+
+    // Streams sheet record by record, handing each processed student to the consumer
+    public int processSheet(File csvFile, String sheetKey, CourseType courseType, String charset, boolean useComma,
+                            Consumer<Student> onStudent) {
+        return runExclusive(() -> {
+            ImportBatch batch = createBatch(onStudent);
+            int students = processSheet(csvFile, sheetKey, courseType, charset, useComma, batch);
+            flush(batch);
+            return students;
+        });
+    }
+
+    // Runs import once no other import is in progress
+    public <T> T runExclusive(Supplier<T> importer) {
+        if (!importLock.tryLock()) {
+            log.info("Waiting for import in progress...");
+            importLock.lock();
+        }
+        try {
+            return importer.get();
+        } finally {
+            importLock.unlock();
+        }
+    }
+
+    // Creates a batch shared by sheets of one import
+    public ImportBatch createBatch(Consumer<Student> onStudent) {
+        return new ImportBatch(studentService.createResolver(), onStudent);
+    }
+
+    // Evaluates an import against a snapshot of storage in one read-only transaction, writing nothing
+    public ImportPlan plan(Consumer<ImportBatch> importer) {
+        return plan(importer, null);
+    }
+
+    // Evaluates an import that enrolls its students in course, or in no course when null
+    public ImportPlan plan(Consumer<ImportBatch> importer, Classroom course) {
+        TransactionTemplate snapshot = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        snapshot.setReadOnly(true);
+        snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        return snapshot.execute(status -> {
+            status.setRollbackOnly();
+            long startTime = System.currentTimeMillis();
+            ImportPlan plan = new ImportPlan(studentService.getAllStudents(), courseService.getAllCourseApplications(),
+                    enrollmentService.getEnrollmentKeys());
+            log.debug("Loaded import snapshot in " + (System.currentTimeMillis() - startTime) + " ms.");
+
+            // Detach the snapshot so that nothing changed in memory can ever be flushed
+            entityManager.clear();
+            ImportBatch batch = new ImportBatch(studentService.createResolver(), student -> {
+                if (course != null) plan.addEnrollment(student, course);
+            }, plan);
+            importer.accept(batch);
+            flush(batch);
+            return plan;
+        });
+    }
+
+    // Streams sheet into a batch that may be shared with sheets processed concurrently
     @SneakyThrows
-    public Set<Student> processSheet(File csvFile, CourseType courseType, String charset, boolean useComma) {
+    public int processSheet(File csvFile, String sheetKey, CourseType courseType, String charset, boolean useComma,
+                            ImportBatch batch) {
 
-        List<Student> students = new ArrayList<>();
+        int rows = 0;
+        int students = 0;
+        int skipped = 0;
+        int rejected = 0;
+        long startTime = System.currentTimeMillis();
+        Map<String, SheetFingerprint> fingerprints = sheetFingerprintService.getFingerprints(sheetKey);
+        Map<UUID, Set<String>> enrolledWaitlist = new HashMap<>();
 
         log.info("Proccessing " + csvFile.getName() + " spreadsheet...");
 
         BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), charset));
-        try (CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(useComma ? ',' : ';'))) {
+        try (CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(useComma ? ',' : ';'));
+             SheetQuarantine quarantine = batch.isPlan() ? null : new SheetQuarantine(csvFile, sheetKey, new ArrayList<>(parser.getHeaderMap().keySet()), charset, useComma)) {
+
+            // Resolve columns once for the whole sheet
+            SheetMapping mapping = new SheetMapping(parser.getHeaderMap(), this::getHeaderNames);
+
+            for (CSVRecord record : parser) {
+                // Report progress
+                if (++rows % progressInterval == 0) {
+                    log.info("Proccessed " + rows + " records (" + students + " students) from " + csvFile.getName()
+                            + " in " + (System.currentTimeMillis() - startTime) / 1000 + " seconds...");
+                }
 
-            List<CSVRecord> records = parser.getRecords();
-            log.debug("Found " + records.size() + " records.");
-            for (CSVRecord record : records) {
                 // Parse education
-                String education = record.get("Utdanning");
-                String alternative = education.length() > 8 && education.contains(" - ") ? education.split(" - ")[0] : education;
-                if (courseType == null) courseType = courseService.getCourseType(education).orElseThrow();
-                else if (!education.equalsIgnoreCase(courseType.getLongName()) && !education.equalsIgnoreCase(courseType.getShortName())
+                String education = mapping.get(record, SheetColumn.EDUCATION);
+                if (education == null || education.isBlank()) {
+                    reject(quarantine, batch, mapping, record, "Missing " + SheetColumn.EDUCATION.getDefaultHeader());
+                    continue;
+                }
+                String alternative = SheetParsers.parseEducationAlternative(education);
+                if (courseType == null) {
+                    Optional<CourseType> found = courseService.getCourseType(education);
+                    if (found.isEmpty()) {
+                        reject(quarantine, batch, mapping, record, "Unknown education '" + education + "'");
+                        continue;
+                    }
+                    courseType = found.get();
+                } else if (!education.equalsIgnoreCase(courseType.getLongName()) && !education.equalsIgnoreCase(courseType.getShortName())
                         && !education.equalsIgnoreCase(courseType.getAliasName()) && !alternative.equalsIgnoreCase(courseType.getLongName())
                         && !alternative.equalsIgnoreCase(courseType.getAliasName())) continue;
 
-                // Parse student data
-                String firstName = record.get("Fornavn");
-                String lastName = record.get("Etternavn");
-                String emailAddress = record.get("E-postadresse");
-
-                // Parse phone number
-                String phoneInput = record.get("Mobilnummer");
-                phoneInput = phoneInput.replaceAll("[^0-9]", "");
-                phoneInput = phoneInput.length() > 8 ? phoneInput.substring(phoneInput.length() - 8) : phoneInput;
-                Integer phoneNumber = phoneInput.length() > 0 ? Integer.parseInt(phoneInput) : null;
-
-                // Parse birth date
-                LocalDate birthDate = null;
-                String birthInput = record.isMapped("Fodselsdato") ? record.get("Fodselsdato") : record.get("Personnummer").substring(0, 6);
-                if (birthInput != null && birthInput.length() > 5) {
-                    try {
-                        birthInput = birthInput.replaceAll("[^\\d]", "");
-                        if (birthInput.length() == 8)
-                            birthInput = birthInput.substring(0, 4) + birthInput.substring(6, 8);
-                        if (birthInput.length() == 5) birthInput = "0" + birthInput;
-                        birthDate = LocalDate.parse(birthInput, DateTimeFormatter.ofPattern("ddMMyy"));
-                        if (birthDate.isAfter(LocalDate.now().minusYears(15))) birthDate = birthDate.minusYears(100);
-                    } catch (Exception exception) {
-                        log.warn("Failed to parsing birth date for " + firstName + " " + lastName + "."
-                                + " Birth date input: '" + birthInput + "'");
-                    }
-                } else {
-                    log.warn("Failed to parsing birth date for " + firstName + " " + lastName + "."
-                            + " Birth date input: '" + birthInput + "'");
+                // Reject rows that can not be processed
+                String rejection = validate(record, mapping);
+                if (rejection != null) {
+                    reject(quarantine, batch, mapping, record, rejection);
+                    continue;
                 }
 
-                // Create new student
-                Student student = studentService.createStudent(emailAddress, firstName, lastName, birthDate, phoneNumber);
-
-                // Update phone number
-                if (student.getPhone() == null || student.getPhone().getPhoneNumber() == null
-                        || student.getPhone().getPhoneNumber() == 0) {
-                    phoneService.createPhone(phoneNumber);
+                // Skip rows unchanged since last import, unless enrollment since then promotes a waitlisted application
+                String firstName = mapping.get(record, SheetColumn.FIRST_NAME);
+                String lastName = mapping.get(record, SheetColumn.LAST_NAME);
+                String emailAddress = mapping.get(record, SheetColumn.EMAIL);
+                String hash = sheetFingerprintService.hash(record);
+                CourseType sheetType = courseType;
+                if (skipUnchanged && sheetFingerprintService.isUnchanged(fingerprints, emailAddress, hash)
+                        && !enrolledWaitlist.computeIfAbsent(sheetType.getId(), id -> courseService.getEnrolledWaitlistEmails(sheetType))
+                        .contains(StudentResolver.getEmailKey(emailAddress))) {
+                    skipped++;
+                    continue;
                 }
 
-                // Update birth date
-                LocalDate oldBirthDate = null;
-                try {
-                    oldBirthDate = student.getBirthDate();
-                } catch (Exception exception) {
-                    student.setBirthDate(null);
-                    studentService.saveChanges(student);
-                    log.error("Failed to retrieve stored birth date", exception);
-                    System.exit(1);
+                // Process row while holding the locks of its identity keys
+                List<String> keys = new ArrayList<>(List.of(StudentResolver.getEmailKey(emailAddress),
+                        StudentResolver.getNameKey(firstName, lastName, null)));
+                String socialSecurityNumber = mapping.has(SheetColumn.SOCIAL_SECURITY_NUMBER)
+                        ? mapping.get(record, SheetColumn.SOCIAL_SECURITY_NUMBER) : null;
+                if (socialSecurityNumber != null && socialSecurityNumber.length() == 11) {
+                    keys.add(fieldCipher.blindIndex(socialSecurityNumber));
                 }
-                if (oldBirthDate == null && birthDate != null) {
-                    student.setBirthDate(birthDate);
-                    studentService.saveChanges(student);
-                }
-                if (student.getBirthDate() == null && oldBirthDate == null) {
-                    log.error("Failed to parsing birth date for " + student.getFullName() + "."
-                            + " Birth date input: '" + birthInput + "'");
+                try {
+                    batch.processRow(keys, () -> {
+                        Student student = processRecord(record, mapping, sheetType, batch);
+                        batch.saveFingerprint(sheetFingerprintService.updateFingerprint(fingerprints, sheetKey, emailAddress, hash));
+                        return student;
+                    });
+                } catch (RuntimeException ex) {
+                    reject(quarantine, batch, mapping, record, ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName());
+                    continue;
                 }
+                students++;
 
-                // Social security number
-                if (student.getSocialSecurityNumber() == null && record.isMapped("Personnummer")) {
-                    String socialSecurityNumber = record.get("Personnummer");
-                    if (socialSecurityNumber != null && socialSecurityNumber.length() == 11) {
-                        socialSecurityNumber = textEncryptor.encrypt(socialSecurityNumber);
-                        student.setSocialSecurityNumber(socialSecurityNumber);
-                        studentService.saveChanges(student);
-                        log.debug("Updated social security number for " + student.getFullName() + " to: " + socialSecurityNumber);
-
-                    } else {
-                        log.warn("Invalid social security number for " + student.getFullName() + ".");
-                    }
-                }
+                // Write chunk
+                if (batch.size() >= batchSize) flush(batch);
+            }
+            rejected = quarantine != null ? quarantine.getRejected() : 0;
+            if (rejected > 0) {
+                log.warn("Rejected " + rejected + " records from " + csvFile.getName() + ", see " + quarantine.getFile().getPath() + ".");
+            }
+        }
+
+        log.info("Proccessed " + students + " students from " + rows + " records in " + csvFile.getName()
+                + " (" + skipped + " unchanged records skipped, " + rejected + " records rejected).");
+        return students;
+    }
+
+    // Reason for rejecting record before processing, or null if valid
+    private String validate(CSVRecord record, SheetMapping mapping) {
+        if (!record.isConsistent()) return "Record has " + record.size() + " of the sheet columns";
+        for (SheetColumn column : List.of(SheetColumn.FIRST_NAME, SheetColumn.LAST_NAME, SheetColumn.EMAIL)) {
+            if (!mapping.has(column)) return "Sheet has no " + column.getDefaultHeader() + " column";
+            String value = mapping.get(record, column);
+            if (value == null || value.isBlank()) return "Missing " + column.getDefaultHeader();
+        }
+        String fullName = mapping.get(record, SheetColumn.FIRST_NAME) + mapping.get(record, SheetColumn.LAST_NAME);
+        if (fullName.contains("\uFFFD")) return "Charset decoding error in name '" + fullName + "'";
+        return null;
+    }
+
+    // Writes record to quarantine file, or aborts import when quarantine is disabled (recorded only in a dry run)
+    private void reject(SheetQuarantine quarantine, ImportBatch batch, SheetMapping mapping, CSVRecord record, String reason)
+            throws IOException {
+        if (batch.isPlan()) {
+            batch.recordChange(ImportChange.REJECTED_ROW, mapping.get(record, SheetColumn.FIRST_NAME),
+                    mapping.get(record, SheetColumn.LAST_NAME), mapping.get(record, SheetColumn.EMAIL),
+                    "Record " + record.getRecordNumber() + ": " + reason);
+            return;
+        }
+        if (!quarantineEnabled) throw new IllegalStateException("Failed to import record " + record.getRecordNumber() + ": " + reason);
+        quarantine.reject(record, reason);
+    }
+
+    // Creates or updates student and application from a single record
+    private Student processRecord(CSVRecord record, SheetMapping mapping, CourseType courseType, ImportBatch batch) {
+
+        // Parse student data
+        String firstName = mapping.get(record, SheetColumn.FIRST_NAME);
+        String lastName = mapping.get(record, SheetColumn.LAST_NAME);
+        String emailAddress = mapping.get(record, SheetColumn.EMAIL);
+
+        // Parse phone number
+        Integer phoneNumber = SheetParsers.parsePhone(mapping.get(record, SheetColumn.PHONE));
+
+        // Parse birth date
+        String birthInput = mapping.has(SheetColumn.BIRTH_DATE) ? mapping.get(record, SheetColumn.BIRTH_DATE)
+                : mapping.get(record, SheetColumn.SOCIAL_SECURITY_NUMBER);
+        if (!mapping.has(SheetColumn.BIRTH_DATE) && birthInput != null && birthInput.length() > 6) {
+            birthInput = birthInput.substring(0, 6);
+        }
+        LocalDate birthDate = birthInput != null && birthInput.length() > 5 ? SheetParsers.parseBirthDate(birthInput, LocalDate.now()) : null;
+        if (birthDate == null) {
+            log.warn("Failed to parsing birth date for " + firstName + " " + lastName + "."
+                    + " Birth date input: '" + birthInput + "'");
+        }
+
+        // Parse social security number
+        String socialSecurityNumber = mapping.has(SheetColumn.SOCIAL_SECURITY_NUMBER)
+                ? mapping.get(record, SheetColumn.SOCIAL_SECURITY_NUMBER) : null;
+        String socialSecurityIndex = socialSecurityNumber != null && socialSecurityNumber.length() == 11
+                ? fieldCipher.blindIndex(socialSecurityNumber) : null;
 
-                // Update address
-                if (record.isMapped("Adresse")) {
-                    try {
-                        String streetAddress = record.get("Adresse");
-                        if (streetAddress != null && streetAddress.length() > 0) {
-                            if (record.isMapped("Postnummer") && record.isMapped("Sted")) {
-                                String zipInput = record.get("Postnummer");
-                                if (zipInput != null && zipInput.length() > 0) {
-                                    String cityName = record.get("Sted").replaceAll("[^A-Za-z]", "");
-                                    Integer zipCode = Integer.parseInt(zipInput.replaceAll("[^0-9]", ""));
-                                    homeAddressService.updateHomeAddress(student, streetAddress, zipCode, cityName);
-                                }
-
-                            } else if (record.isMapped("Poststed")) {
-                                String zipInput = record.get("Poststed");
-                                if (zipInput != null && zipInput.length() > 0) {
-                                    String cityName = zipInput.replaceAll("[^A-Za-z]", "");
-                                    Integer zipCode = Integer.parseInt(zipInput.replaceAll("[^0-9]", ""));
-                                    homeAddressService.updateHomeAddress(student, streetAddress, zipCode, cityName);
-                                }
-                            }
+        // Create new student
+        Student student = studentService.createStudent(emailAddress, firstName, lastName, birthDate, phoneNumber,
+                socialSecurityIndex, batch);
+
+        // Update phone number
+        if (student.getPhone() == null || student.getPhone().getPhoneNumber() == null
+                || student.getPhone().getPhoneNumber() == 0) {
+            Phone phone = phoneService.createPhone(phoneNumber, batch);
+            if (phone != null) {
+                student.setPhone(phone);
+                batch.saveStudent(student);
+            }
+        }
+
+        // Update birth date
+        LocalDate oldBirthDate = null;
+        try {
+            oldBirthDate = student.getBirthDate();
+        } catch (IllegalStateException exception) {
+            student.setBirthDate(null);
+            batch.saveStudent(student);
+            log.warn("Replacing invalid stored birth date for " + student.getFullName() + ": " + exception.getMessage());
+        }
+        if (oldBirthDate == null && birthDate != null) {
+            student.setBirthDate(birthDate);
+            batch.saveStudent(student);
+        }
+        if (student.getBirthDate() == null && oldBirthDate == null) {
+            log.error("Failed to parsing birth date for " + student.getFullName() + "."
+                    + " Birth date input: '" + birthInput + "'");
+        }
+
+        // Social security number
+        if (student.getSocialSecurityNumber() == null && mapping.has(SheetColumn.SOCIAL_SECURITY_NUMBER)) {
+            if (socialSecurityIndex != null) {
+                student.setSocialSecurityNumber(fieldCipher.encrypt(socialSecurityNumber));
+                student.setSocialSecurityIndex(socialSecurityIndex);
+                batch.saveStudent(student);
+                log.debug("Updated social security number for " + student.getFullName() + " to: " + student.getSocialSecurityNumber());
+
+            } else {
+                log.warn("Invalid social security number for " + student.getFullName() + ".");
+            }
+        }
+
+        // Update address
+        if (mapping.has(SheetColumn.ADDRESS)) {
+            try {
+                String streetAddress = mapping.get(record, SheetColumn.ADDRESS);
+                if (streetAddress != null && streetAddress.length() > 0) {
+                    if (mapping.has(SheetColumn.ZIP_CODE) && mapping.has(SheetColumn.CITY)) {
+                        Integer zipCode = SheetParsers.parseZip(mapping.get(record, SheetColumn.ZIP_CODE));
+                        if (zipCode != null) {
+                            String cityName = SheetParsers.parseCity(mapping.get(record, SheetColumn.CITY));
+                            homeAddressService.updateHomeAddress(student, streetAddress, zipCode, cityName, batch);
                         }
 
-                    } catch (Exception ex) {
-                        if (student.getHomeAddress() == null) {
-                            log.warn("Invalid home address for " + firstName + " " + lastName + ".");
+                    } else if (mapping.has(SheetColumn.POSTAL_PLACE)) {
+                        String zipInput = mapping.get(record, SheetColumn.POSTAL_PLACE);
+                        Integer zipCode = SheetParsers.parseZip(zipInput);
+                        if (zipCode != null) {
+                            String cityName = SheetParsers.parseCity(zipInput);
+                            homeAddressService.updateHomeAddress(student, streetAddress, zipCode, cityName, batch);
                         }
                     }
                 }
 
-                // Other status
-                Boolean uptake = null;
-                if (record.isMapped("Opptak") && courseType.getUseUptake() != null && courseType.getUseUptake()) {
-                    uptake = record.get("Opptak").equalsIgnoreCase("True");
+            } catch (Exception ex) {
+                if (student.getHomeAddress() == null) {
+                    log.warn("Invalid home address for " + firstName + " " + lastName + ".");
                 }
-
-                // Create course application
-                courseService.createCourseApplication(student, courseType, uptake);
-                students.add(student);
             }
         }
 
-        log.info("Proccessed " + students.size() + " students.");
-        return new HashSet<>(students);
+        // Other status
+        Boolean uptake = null;
+        if (mapping.has(SheetColumn.UPTAKE) && courseType.getUseUptake() != null && courseType.getUseUptake()) {
+            uptake = "True".equalsIgnoreCase(mapping.get(record, SheetColumn.UPTAKE));
+        }
+
+        // Create course application
+        courseService.createCourseApplication(student, courseType, uptake, batch);
+        batch.addRow(student);
+        return student;
+    }
+
+    // Accepted header names of column, configurable per sheet layout
+    private String[] getHeaderNames(SheetColumn column) {
+        return environment.getProperty("gatevas.import.columns." + column.getKey(), String[].class,
+                new String[]{column.getDefaultHeader()});
+    }
+
+    // Writes pending entities in one transaction with JDBC batching, then hands the students to the consumer
+    public void flush(ImportBatch batch) {
+        batch.write(() -> {
+            if (batch.size() == 0) return;
+
+            // Hand the students of a dry run to the consumer without writing anything
+            if (batch.isPlan()) {
+                batch.getRows().forEach(batch.getOnStudent());
+                batch.clear();
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                phoneService.saveChanges(batch.getPhones());
+                studentService.saveChanges(batch.getStudents());
+                homeAddressService.saveChanges(batch.getHomeAddresses());
+                courseService.updateCourseApplications(batch.getCourseApplications());
+                sheetFingerprintService.saveChanges(batch.getFingerprints());
+            });
+            log.debug("Saved " + batch.getStudents().size() + " students and " + batch.getCourseApplications().size()
+                    + " applications from " + batch.size() + " records.");
+            batch.getResolver().register(batch);
+            batch.getRows().forEach(batch.getOnStudent());
+            batch.clear();
+        });
     }
 
 }
\ No newline at end of file
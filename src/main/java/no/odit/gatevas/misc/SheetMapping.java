@@ -0,0 +1,42 @@
+package no.odit.gatevas.misc;
+
+import no.odit.gatevas.type.SheetColumn;
+import org.apache.commons.csv.CSVRecord;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+// Column indexes of one sheet, resolved once from its header
+public class SheetMapping {
+
+    private final int[] indexes = new int[SheetColumn.values().length];
+
+    // Resolves columns by the first configured header name found in sheet
+    public SheetMapping(Map<String, Integer> headerMap, Function<SheetColumn, String[]> headerNames) {
+        Map<String, Integer> headers = new HashMap<>();
+        headerMap.forEach((name, index) -> headers.putIfAbsent(name.trim().toLowerCase(), index));
+        for (SheetColumn column : SheetColumn.values()) {
+            indexes[column.ordinal()] = -1;
+            for (String name : headerNames.apply(column)) {
+                Integer index = headers.get(name.trim().toLowerCase());
+                if (index != null) {
+                    indexes[column.ordinal()] = index;
+                    break;
+                }
+            }
+        }
+    }
+
+    // Whether sheet has column
+    public boolean has(SheetColumn column) {
+        return indexes[column.ordinal()] >= 0;
+    }
+
+    // Value of column in record, or null if sheet or record lacks it
+    public String get(CSVRecord record, SheetColumn column) {
+        int index = indexes[column.ordinal()];
+        return index >= 0 && index < record.size() ? record.get(index) : null;
+    }
+
+}
@@ -0,0 +1,118 @@
+package no.odit.gatevas.misc;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.regex.Pattern;
+
+// Normalizers for sheet values, scanning characters instead of compiling regular expressions per row
+public final class SheetParsers {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private SheetParsers() {
+    }
+
+    // Last eight digits of phone input, or null without digits
+    public static Integer parsePhone(String input) {
+        if (input == null) return null;
+        int digits = countDigits(input);
+        if (digits == 0) return null;
+        int skip = Math.max(0, digits - 8);
+        int value = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c < '0' || c > '9') continue;
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Birth date from ddMMyy, ddMMyyyy or dMMyy input, or null when invalid
+    public static LocalDate parseBirthDate(String input, LocalDate today) {
+        if (input == null) return null;
+        int[] digits = new int[8];
+        int length = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c < '0' || c > '9') continue;
+            if (length == digits.length) return null;
+            digits[length++] = c - '0';
+        }
+
+        // Day, month and two-digit year
+        int day;
+        int month;
+        int year;
+        if (length == 6 || length == 8) {
+            day = digits[0] * 10 + digits[1];
+            month = digits[2] * 10 + digits[3];
+            year = digits[length - 2] * 10 + digits[length - 1];
+        } else if (length == 5) {
+            day = digits[0];
+            month = digits[1] * 10 + digits[2];
+            year = digits[3] * 10 + digits[4];
+        } else {
+            return null;
+        }
+
+        try {
+            YearMonth yearMonth = YearMonth.of(2000 + year, month);
+            if (day < 1 || day > 31) return null;
+            LocalDate birthDate = yearMonth.atDay(Math.min(day, yearMonth.lengthOfMonth()));
+            if (birthDate.isAfter(today.minusYears(15))) birthDate = birthDate.minusYears(100);
+            return birthDate;
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+
+    // Digits of zip code input, or null without digits or with more than four
+    public static Integer parseZip(String input) {
+        if (input == null) return null;
+        int digits = countDigits(input);
+        if (digits == 0 || digits > 4) return null;
+        int value = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= '0' && c <= '9') value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Letters A-Z of city input
+    public static String parseCity(String input) {
+        if (input == null) return null;
+        StringBuilder city = new StringBuilder(input.length());
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) city.append(c);
+        }
+        return city.toString();
+    }
+
+    // Education name before " - " suffix
+    public static String parseEducationAlternative(String education) {
+        int split = education.indexOf(" - ");
+        return education.length() > 8 && split >= 0 ? education.substring(0, split) : education;
+    }
+
+    // Trimmed value with whitespace runs collapsed
+    public static String normalize(String value) {
+        return WHITESPACE.matcher(value.trim()).replaceAll(" ");
+    }
+
+    private static int countDigits(String input) {
+        int digits = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= '0' && c <= '9') digits++;
+        }
+        return digits;
+    }
+
+}
@@ -0,0 +1,72 @@
+package no.odit.gatevas.misc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Rejected rows of a sheet, written with their reason to a CSV file next to the sheet.
+// The file keeps the headers of the sheet so that it can be imported again once fixed.
+@Slf4j
+public class SheetQuarantine implements Closeable {
+
+    public static final String REASON_HEADER = "Reason";
+
+    private final File file;
+
+    private final String[] headers;
+
+    private final CSVFormat format;
+
+    private final Charset charset;
+
+    private CSVPrinter printer;
+
+    private int rejected;
+
+    // One file per sheet key, since course types sharing a sheet are imported concurrently
+    public SheetQuarantine(File csvFile, String sheetKey, List<String> headers, String charset, boolean useComma) {
+        String name = csvFile.getName().replaceAll("(?i)\\.csv$", "") + "-" + sheetKey.replaceAll("[^A-Za-z0-9]+", "-");
+        this.file = new File(csvFile.getAbsoluteFile().getParentFile(), name + "-quarantine.csv");
+        if (file.exists() && !file.delete()) log.warn("Failed to remove old quarantine file " + file.getPath() + ".");
+        List<String> quarantineHeaders = new ArrayList<>(headers);
+        if (!quarantineHeaders.contains(REASON_HEADER)) quarantineHeaders.add(REASON_HEADER);
+        this.headers = quarantineHeaders.toArray(String[]::new);
+        this.format = CSVFormat.DEFAULT.withDelimiter(useComma ? ',' : ';').withHeader(this.headers);
+        this.charset = Charset.forName(charset);
+    }
+
+    // Writes record with reason, creating the file on first rejected row
+    public synchronized void reject(CSVRecord record, String reason) throws IOException {
+        if (printer == null) {
+            printer = new CSVPrinter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), charset)), format);
+        }
+        List<String> values = new ArrayList<>(headers.length);
+        for (int i = 0; i < headers.length - 1; i++) {
+            values.add(i < record.size() ? record.get(i) : "");
+        }
+        values.add(reason);
+        printer.printRecord(values);
+        rejected++;
+        log.warn("Rejected record " + record.getRecordNumber() + " of " + file.getName() + ": " + reason);
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (printer != null) printer.close();
+    }
+
+}
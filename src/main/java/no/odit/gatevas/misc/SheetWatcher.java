@@ -0,0 +1,216 @@
+package no.odit.gatevas.misc;
+
+import lombok.extern.slf4j.Slf4j;
+import no.odit.gatevas.model.Classroom;
+import no.odit.gatevas.model.CourseType;
+import no.odit.gatevas.service.CourseService;
+import no.odit.gatevas.service.EnrollmentService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Watches the import folders and imports sheets matching a course type or course as soon as they are fully written
+@Component
+@Slf4j
+public class SheetWatcher {
+
+    @Autowired
+    private CourseService courseService;
+
+    @Autowired
+    private EnrollmentService enrollmentService;
+
+    @Autowired
+    private SheetImportCSV sheetImportCSV;
+
+    @Autowired
+    private ThreadPoolTaskExecutor taskExecutor;
+
+    @Value("${gatevas.global.import_path}")
+    private String globalImportPath;
+
+    @Value("${gatevas.course.import_path}")
+    private String courseImportPath;
+
+    @Value("${gatevas.watch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${gatevas.watch.debounce_millis:3000}")
+    private long debounceMillis;
+
+    private WatchService watchService;
+
+    // Files being imported, changes to them are picked up after the import
+    private final Set<Path> importing = ConcurrentHashMap.newKeySet();
+
+    @EventListener(ApplicationReadyEvent.class)
+    private void init() {
+        if (!enabled) return;
+        try {
+            start();
+        } catch (IOException ex) {
+            log.error("Failed to watch import folders.", ex);
+        }
+    }
+
+    // Starts watching the import folders in the background
+    public synchronized boolean start() throws IOException {
+        if (watchService != null) return false;
+        watchService = FileSystems.getDefault().newWatchService();
+        for (String folder : Set.of(globalImportPath, courseImportPath)) {
+            Paths.get(folder).toAbsolutePath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            log.info("Watching '" + folder + "' for sheets to import.");
+        }
+        WatchService service = watchService;
+        Thread thread = new Thread(() -> watch(service), "sheet-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    // Stops watching the import folders
+    @PreDestroy
+    public synchronized boolean stop() throws IOException {
+        if (watchService == null) return false;
+        watchService.close();
+        watchService = null;
+        log.info("Stopped watching import folders.");
+        return true;
+    }
+
+    public synchronized boolean isRunning() {
+        return watchService != null;
+    }
+
+    // Collects file events and imports files once they have been unchanged for the debounce time
+    private void watch(WatchService service) {
+        Map<Path, PendingFile> pending = new HashMap<>();
+        try {
+            while (true) {
+                WatchKey key = service.poll(Math.max(100, debounceMillis / 4), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    Path folder = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                        Path path = folder.resolve((Path) event.context());
+                        pending.computeIfAbsent(path, PendingFile::new).touch();
+                    }
+                    key.reset();
+                }
+                importSettled(pending);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException ex) {
+            log.debug("Dropped " + pending.size() + " pending sheet changes.");
+        }
+    }
+
+    // Imports pending files with no events and no change in size during the debounce time
+    private void importSettled(Map<Path, PendingFile> pending) {
+        long now = System.currentTimeMillis();
+        Iterator<PendingFile> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingFile file = iterator.next();
+            if (now - file.changedAt < debounceMillis || importing.contains(file.path)) continue;
+            if (!file.isSettled()) {
+                file.touch();
+                continue;
+            }
+            iterator.remove();
+            importing.add(file.path);
+            taskExecutor.execute(() -> {
+                try {
+                    importFile(file.path.toFile());
+                } catch (Exception ex) {
+                    log.error("Failed to import '" + file.path + "'.", ex);
+                } finally {
+                    importing.remove(file.path);
+                }
+            });
+        }
+    }
+
+    // Imports file into every course type or course using it
+    private void importFile(File csvFile) {
+        String name = csvFile.getName();
+        File folder = csvFile.getParentFile();
+
+        // Global sheet
+        if (isFolder(folder, globalImportPath)) {
+            List<CourseType> courseTypes = courseService.getCourseTypes().stream()
+                    .filter(type -> name.equalsIgnoreCase(type.getCsvFile()))
+                    .collect(Collectors.toList());
+            if (!courseTypes.isEmpty()) {
+                long startTime = System.currentTimeMillis();
+                int students = sheetImportCSV.runExclusive(() -> {
+                    ImportBatch batch = sheetImportCSV.createBatch(student -> {
+                    });
+                    int imported = 0;
+                    for (CourseType courseType : courseTypes) {
+                        imported += sheetImportCSV.processSheet(csvFile, "type:" + courseType.getShortName(), courseType,
+                                "UTF-8", true, batch);
+                    }
+                    sheetImportCSV.flush(batch);
+                    return imported;
+                });
+                log.info("Imported " + students + " students from '" + name + "' in "
+                        + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
+            }
+        }
+
+        // Course sheet
+        if (isFolder(folder, courseImportPath)) {
+            for (Classroom course : courseService.getAllCourses()) {
+                if (!name.equalsIgnoreCase(course.getCsvFile())) continue;
+                courseService.importStudents(csvFile, course, false, student -> enrollmentService.createEnrollment(student, course))
+                        .ifPresent(students -> log.info("Imported and enrolled " + students + " students from '" + name
+                                + "' to '" + course.getShortName() + "'."));
+            }
+        }
+    }
+
+    private boolean isFolder(File folder, String path) {
+        return folder != null && folder.toPath().toAbsolutePath().normalize().equals(Paths.get(path).toAbsolutePath().normalize());
+    }
+
+    // File with a recent change, settled once its size stops changing
+    private static class PendingFile {
+
+        private final Path path;
+
+        private long changedAt;
+
+        private long size = -1;
+
+        private PendingFile(Path path) {
+            this.path = path;
+        }
+
+        private void touch() {
+            changedAt = System.currentTimeMillis();
+            size = path.toFile().length();
+        }
+
+        private boolean isSettled() {
+            File file = path.toFile();
+            return file.isFile() && file.length() == size && file.length() > 0;
+        }
+    }
+
+}
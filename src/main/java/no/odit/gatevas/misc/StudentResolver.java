@@ -0,0 +1,68 @@
+package no.odit.gatevas.misc;
+
+import no.odit.gatevas.dao.StudentRepo;
+import no.odit.gatevas.model.Student;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// Resolves sheet rows to stored students in memory, using keys preloaded once per import
+public class StudentResolver {
+
+    private final Map<String, UUID> byEmail = new HashMap<>();
+
+    private final Map<String, UUID> byLogin = new HashMap<>();
+
+    private final Map<String, UUID> byName = new HashMap<>();
+
+    private final Map<String, UUID> bySocialSecurityIndex = new HashMap<>();
+
+    public StudentResolver(Collection<StudentRepo.StudentKey> keys) {
+        for (StudentRepo.StudentKey key : keys) {
+            byEmail.putIfAbsent(getEmailKey(key.getEmail()), key.getId());
+            if (key.getLogin() != null) byLogin.putIfAbsent(getEmailKey(key.getLogin()), key.getId());
+            byName.putIfAbsent(getNameKey(key.getFirstName(), key.getLastName(), key.getBirthDate()), key.getId());
+            if (key.getSocialSecurityIndex() != null) bySocialSecurityIndex.putIfAbsent(key.getSocialSecurityIndex(), key.getId());
+        }
+    }
+
+    // Find stored student by social security index, email, name and birth, login, then name without birth
+    public Optional<UUID> resolve(String socialSecurityIndex, String email, String firstName, String lastName, LocalDate birthDate) {
+        UUID id = socialSecurityIndex != null ? bySocialSecurityIndex.get(socialSecurityIndex) : null;
+        if (id == null) id = byEmail.get(getEmailKey(email));
+        if (id == null) id = byName.get(getNameKey(firstName, lastName, birthDate));
+        if (id == null) id = byLogin.get(getEmailKey(email));
+        if (id == null && birthDate != null) id = byName.get(getNameKey(firstName, lastName, null));
+        return Optional.ofNullable(id);
+    }
+
+    // Adds students written by a batch
+    public void register(ImportBatch batch) {
+        batch.getStudentsByName().forEach((key, student) -> {
+            if (student.getId() != null) byName.putIfAbsent(key, student.getId());
+        });
+        for (Student student : batch.getStudentsByEmail().values()) {
+            if (student.getId() == null) continue;
+            byEmail.put(getEmailKey(student.getEmail()), student.getId());
+            if (student.getLogin() != null) byLogin.put(getEmailKey(student.getLogin()), student.getId());
+        }
+        for (Student student : batch.getStudents()) {
+            if (student.getId() != null && student.getSocialSecurityIndex() != null) {
+                bySocialSecurityIndex.putIfAbsent(student.getSocialSecurityIndex(), student.getId());
+            }
+        }
+    }
+
+    public int size() {
+        return byEmail.size();
+    }
+
+    public static String getEmailKey(String email) {
+        return email.trim().toLowerCase();
+    }
+
+    public static String getNameKey(String firstName, String lastName, LocalDate birthDate) {
+        return firstName.trim().toLowerCase() + "|" + lastName.trim().toLowerCase() + "|" + birthDate;
+    }
+
+}
@@ -0,0 +1,47 @@
+package no.odit.gatevas.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Type;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"sheet_key", "email"}))
+@Getter
+@Setter
+public class SheetFingerprint {
+
+    @Id
+    @GeneratedValue
+    @Type(type = "uuid-char")
+    private UUID id;
+
+    @Column(nullable = false)
+    private String sheetKey;
+
+    @Column(nullable = false)
+    private String email;
+
+    @Column(nullable = false, length = 32)
+    private String hash;
+
+    @Column(nullable = false)
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    @Column(nullable = false, updatable = false)
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @Override
+    public String toString() {
+        return "SheetFingerprint [id=" + id + ", sheetKey=" + sheetKey + ", email=" + email + ", hash=" + hash
+                + ", updatedAt=" + updatedAt + ", createdAt=" + createdAt + "]";
+    }
+
+}
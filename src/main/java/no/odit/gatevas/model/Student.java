@@ -15,6 +15,7 @@ import java.util.Set;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = @Index(name = "idx_student_social_security_index", columnList = "social_security_index"))
 @Getter
 @Setter
 public class Student {
@@ -46,6 +47,10 @@ public class Student {
     @Column
     private String socialSecurityNumber;
 
+    // Keyed hash of the social security number, for lookups without decrypting
+    @Column(length = 64)
+    private String socialSecurityIndex;
+
     @Column(nullable = false)
     private String tmpPassword;
 
@@ -98,9 +103,9 @@ public class Student {
         if (birthDate == null) return null;
         if (birthDate.isAfter(LocalDate.now())) birthDate = birthDate.minusYears(100);
         if (birthDate.isBefore(LocalDate.now().minusYears(90)))
-            throw new Error("Birth date " + birthDate.toString() + " for student is too old!");
+            throw new IllegalStateException("Birth date " + birthDate.toString() + " for student is too old!");
         if (birthDate.isAfter(LocalDate.now().minusYears(15)))
-            throw new Error("Birth date " + birthDate.toString() + " for student is too young!");
+            throw new IllegalStateException("Birth date " + birthDate.toString() + " for student is too young!");
         return birthDate;
     }
 
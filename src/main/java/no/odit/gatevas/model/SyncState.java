@@ -0,0 +1,59 @@
+package no.odit.gatevas.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import no.odit.gatevas.type.SyncScope;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Type;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"scope", "target_id"}))
+@Getter
+@Setter
+public class SyncState {
+
+    @Id
+    @GeneratedValue
+    @Type(type = "uuid-char")
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private SyncScope scope;
+
+    @Type(type = "uuid-char")
+    @Column(nullable = false)
+    private UUID targetId;
+
+    @Column
+    private LocalDateTime lastCheckedAt;
+
+    @Column
+    private LocalDateTime lastSuccessAt;
+
+    @Column
+    private LocalDateTime nextCheckAt;
+
+    @Column(nullable = false)
+    private Integer failures;
+
+    @Column(nullable = false)
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    @Column(nullable = false, updatable = false)
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @Override
+    public String toString() {
+        return "SyncState [id=" + id + ", scope=" + scope + ", targetId=" + targetId + ", lastCheckedAt=" + lastCheckedAt
+                + ", lastSuccessAt=" + lastSuccessAt + ", nextCheckAt=" + nextCheckAt + ", failures=" + failures + "]";
+    }
+
+}
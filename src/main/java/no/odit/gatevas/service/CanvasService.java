@@ -1,31 +1,39 @@
 package no.odit.gatevas.service;
 
-import edu.ksu.canvas.CanvasApiFactory;
+import com.google.common.collect.Lists;
 import edu.ksu.canvas.interfaces.*;
-import edu.ksu.canvas.model.Account;
+import edu.ksu.canvas.model.Course;
 import edu.ksu.canvas.model.Enrollment;
 import edu.ksu.canvas.model.Role;
 import edu.ksu.canvas.model.User;
 import edu.ksu.canvas.model.assignment.Assignment;
 import edu.ksu.canvas.model.assignment.Submission;
-import edu.ksu.canvas.oauth.OauthToken;
 import edu.ksu.canvas.requestOptions.*;
 import lombok.extern.slf4j.Slf4j;
 import no.odit.gatevas.misc.CanvasAPI;
+import no.odit.gatevas.misc.CanvasSisImport;
+import no.odit.gatevas.misc.CanvasUserIndex;
+import no.odit.gatevas.misc.CanvasWebClient;
+import no.odit.gatevas.misc.SheetExportCSV;
 import no.odit.gatevas.model.Classroom;
 import no.odit.gatevas.model.CourseApplication;
 import no.odit.gatevas.model.RoomLink;
 import no.odit.gatevas.model.Student;
+import no.odit.gatevas.model.SyncState;
 import no.odit.gatevas.type.ApplicationStatus;
 import no.odit.gatevas.type.CanvasStatus;
+import no.odit.gatevas.type.SyncScope;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 @Service
@@ -44,35 +52,64 @@ public class CanvasService {
     @Autowired
     private EnrollmentService enrollmentService;
 
+    @Autowired
+    private CanvasUserIndex canvasUserIndex;
+
+    @Autowired
+    private ThreadPoolTaskExecutor taskExecutor;
+
+    @Autowired
+    private CanvasSisImport canvasSisImport;
+
+    @Autowired
+    private SheetExportCSV sheetExportCSV;
+
+    @Autowired
+    private SyncStateService syncStateService;
+
+    @Autowired
+    private CanvasWebClient canvasWebClient;
+
+    @Value("${canvas_lms.reactive.enabled:false}")
+    private boolean reactiveEnabled;
+
+    @Value("${canvas_lms.reactive.concurrency:16}")
+    private int reactiveConcurrency;
+
+    @Value("${canvas_lms.enroll.parallelism:4}")
+    private int enrollParallelism;
+
+    @Value("${canvas_lms.enroll.batch_size:50}")
+    private int enrollBatchSize;
+
     // Add students to course in Canvas LMS.
     public boolean enrollStudents(Classroom classRoom) {
-        try {
+        return enrollStudents(List.of(classRoom));
+    }
 
-            // Authenticate with API
-            OauthToken oauthToken = canvasAPI.getOauthToken();
-            CanvasApiFactory apiFactory = canvasAPI.getApiFactory();
+    // Add students to courses in Canvas LMS.
+    public boolean enrollStudents(List<Classroom> classRooms) {
+        if (reactiveEnabled) return await(enrollStudentsReactive(classRooms), "Enrolled");
+        try {
 
             // Test connection
-            AccountReader acctReader = apiFactory.getReader(AccountReader.class, oauthToken);
-            Account rootAccount = acctReader.getSingleAccount("1").get();
-            log.debug("Connected to Canvas LMS API at '" + rootAccount.getName() + "'.");
+            canvasAPI.getRootAccount();
 
-            // API readers
-            UserReader userReader = apiFactory.getReader(UserReader.class, oauthToken, 100);
-            EnrollmentWriter enrollmentWriter = apiFactory.getWriter(EnrollmentWriter.class, oauthToken);
-            RoleReader roleReader = apiFactory.getReader(RoleReader.class, oauthToken, 100);
+            // API writers
+            EnrollmentWriter enrollmentWriter = canvasAPI.getWriter(EnrollmentWriter.class);
 
             // Get student role
-            ListRolesOptions roleOptions = new ListRolesOptions("1");
-            Role studentRole = roleReader.listRoles(roleOptions).stream().filter(role -> role.getBaseRoleType().equalsIgnoreCase("student")
-                    || role.getLabel().equalsIgnoreCase("student")).findFirst().orElse(null);
-
+            Role studentRole = canvasAPI.getStudentRole();
 
             /*
              * Look through local enrollments
              * And synchronize it to Canvas LMS
              */
-            for (RoomLink roomLink : classRoom.getEnrollments()) {
+            CompletionService<EnrollmentResult> tasks = new ExecutorCompletionService<>(taskExecutor);
+            Semaphore inFlight = new Semaphore(enrollParallelism);
+            List<RoomLink> results = new ArrayList<>();
+            int submitted = 0;
+            for (RoomLink roomLink : loadEnrollments(classRooms)) {
 
                 Student student = roomLink.getStudent();
                 String name = student.getFirstName() + " " + student.getLastName();
@@ -83,141 +120,345 @@ public class CanvasService {
                 }
 
                 // Find user in Canvas LMS and continue if success
-                getUser(userReader, student, true).ifPresentOrElse(user -> {
-                    try {
-
-                        // Enroll user in Canvas LMS
-                        Enrollment enroll = new Enrollment();
-                        enroll.setUserId(String.valueOf(user.getId()));
-                        enroll.setRoleId(studentRole.getId());
-                        enroll.setSisCourseId(classRoom.getShortName());
-                        enroll.setCourseId(roomLink.getCourse().getCanvasId());
-                        enroll.setRole("student");
-                        enrollmentWriter.enrollUserInCourse(enroll).ifPresentOrElse(result -> {
-                            // Successful enrollment
-                            roomLink.setCanvasId(result.getId());
-                            roomLink.setCanvasStatus(CanvasStatus.EXISTS);
-                            enrollmentService.saveChanges(roomLink);
-                            log.debug("Enrolled '" + name + "' to '" + classRoom.getShortName() + "'.");
-                        }, () -> {
-                            // Failed to enroll user to Canvas course
-                            roomLink.setCanvasStatus(CanvasStatus.MISSING);
-                            enrollmentService.saveChanges(roomLink);
-                            log.warn("Failed to enroll '" + name + "'.");
-                        });
-
-                    } catch (Exception ex) {
-                        // An unknown error occurred while enrolling user
-                        roomLink.setCanvasStatus(CanvasStatus.MISSING);
-                        enrollmentService.saveChanges(roomLink);
-                        log.error("Failed to enroll '" + name + "'.", ex);
-                    }
-
-                }, () -> {
+                Optional<User> user = getUser(student, true);
+                if (user.isEmpty()) {
                     // No user was found in Canvas LMS via API
                     roomLink.setCanvasStatus(CanvasStatus.MISSING);
-                    enrollmentService.saveChanges(roomLink);
-                    log.warn("Could not find '" + name + "', and was thereby not enrolled to '" + classRoom.getShortName() + "'.");
+                    results.add(roomLink);
+                    log.warn("Could not find '" + name + "', and was thereby not enrolled to '" + roomLink.getCourse().getShortName() + "'.");
+                    continue;
+                }
+
+                // Enroll user in Canvas LMS on the task executor
+                inFlight.acquire();
+                tasks.submit(() -> {
+                    try {
+                        return enrollUser(enrollmentWriter, studentRole, roomLink, user.get());
+                    } finally {
+                        inFlight.release();
+                    }
                 });
+                submitted++;
+
+                // Collect finished enrollments
+                Future<EnrollmentResult> done;
+                while ((done = tasks.poll()) != null) {
+                    results.add(done.get().apply());
+                    submitted--;
+                }
+                if (results.size() >= enrollBatchSize) {
+                    enrollmentService.saveChanges(results);
+                    results.clear();
+                }
+            }
+
+            // Wait for remaining enrollments
+            while (submitted > 0) {
+                results.add(tasks.take().get().apply());
+                submitted--;
+                if (results.size() >= enrollBatchSize) {
+                    enrollmentService.saveChanges(results);
+                    results.clear();
+                }
             }
+            if (!results.isEmpty()) enrollmentService.saveChanges(results);
             return true;
 
         } catch (IOException ex) {
             // Connection or authentication error
             log.error("Failed to connect to Canvas LMS API.", ex);
             return false;
+        } catch (InterruptedException ex) {
+            // Enrollment was interrupted
+            log.error("Enrollment of students was interrupted.", ex);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ex) {
+            // Enrollment task failed
+            log.error("Failed to enroll students.", ex.getCause());
+            return false;
         }
     }
 
-    public void test(Classroom classRoom) throws IOException {
+    // Enrolls a single user in Canvas LMS.
+    private EnrollmentResult enrollUser(EnrollmentWriter enrollmentWriter, Role studentRole, RoomLink roomLink, User user) {
+        Classroom classRoom = roomLink.getCourse();
+        String name = roomLink.getStudent().getFirstName() + " " + roomLink.getStudent().getLastName();
+        try {
+            Enrollment enroll = new Enrollment();
+            enroll.setUserId(String.valueOf(user.getId()));
+            enroll.setRoleId(studentRole.getId());
+            enroll.setSisCourseId(classRoom.getShortName());
+            enroll.setCourseId(classRoom.getCanvasId());
+            enroll.setRole("student");
+            Optional<Enrollment> result = enrollmentWriter.enrollUserInCourse(enroll);
+            if (result.isPresent()) {
+                // Successful enrollment
+                log.debug("Enrolled '" + name + "' to '" + classRoom.getShortName() + "'.");
+                return new EnrollmentResult(roomLink, CanvasStatus.EXISTS, result.get().getId());
+            }
+            // Failed to enroll user to Canvas course
+            log.warn("Failed to enroll '" + name + "'.");
 
-        log.info("Testing...");
+        } catch (Exception ex) {
+            // An unknown error occurred while enrolling user
+            log.error("Failed to enroll '" + name + "'.", ex);
+        }
+        return new EnrollmentResult(roomLink, CanvasStatus.MISSING, null);
+    }
 
-        OauthToken oauthToken = canvasAPI.getOauthToken();
-        CanvasApiFactory apiFactory = canvasAPI.getApiFactory();
+    // Creates missing students and their enrollments with one SIS import.
+    public boolean sisImportStudents(Classroom classRoom) {
 
-        String canvasCourseId = String.valueOf(classRoom.getCanvasId());
-//        List<Student> students = classRoom.getStudents();
-        List<CourseApplication> courseApplications = courseService.getCourseApplications(classRoom);
+        // Sync students
+        syncUsersReadOnly(classRoom);
+
+        // Filter out existing students
+        List<RoomLink> enrollments = classRoom.getEnrollments().stream()
+                .filter(enrollment -> !enrollment.getStudent().getExportedToCSV()
+                        && enrollment.getStudent().getCanvasStatus() == CanvasStatus.MISSING)
+                .collect(Collectors.toList());
+        if (enrollments.isEmpty()) {
+            log.debug("All students in '" + classRoom.getShortName() + "' already exists in Canvas LMS.");
+            return true;
+        }
 
-        SubmissionReader submissionReader = apiFactory.getReader(SubmissionReader.class, oauthToken);
-        AssignmentReader assignmentReader = apiFactory.getReader(AssignmentReader.class, oauthToken);
+        try {
 
+            // Upload users and enrollments
+            byte[] zip = sheetExportCSV.createSisImportZip(classRoom, enrollments);
+            if (!canvasSisImport.importZip(zip)) {
+                log.warn("SIS import for '" + classRoom.getShortName() + "' failed. Local status was not changed.");
+                return false;
+            }
+            canvasUserIndex.refresh();
+
+            // Update status
+            List<Student> students = new ArrayList<>();
+            for (RoomLink enrollment : enrollments) {
+                Student student = enrollment.getStudent();
+                student.setExportedToCSV(true);
+                student.setCanvasStatus(CanvasStatus.EXISTS);
+                getUser(student, false).ifPresent(user -> student.setCanvasId(user.getId()));
+                students.add(student);
+                enrollment.setCanvasStatus(CanvasStatus.EXISTS);
+            }
+            studentService.saveChanges(students);
+            enrollmentService.saveChanges(enrollments);
+            log.info("Imported " + students.size() + " students to '" + classRoom.getShortName() + "'.");
+            return true;
 
-        ListCourseAssignmentsOptions assignmentsOptions = new ListCourseAssignmentsOptions(canvasCourseId);
-        List<Assignment> assignments = assignmentReader.listCourseAssignments(assignmentsOptions);
-        List<Submission> submissions = new ArrayList<>();
-        for (Assignment assignment : assignments) {
-            GetSubmissionsOptions submissionsOptions = new GetSubmissionsOptions(canvasCourseId, assignment.getId());
-            submissions.addAll(submissionReader.getCourseSubmissions(submissionsOptions));
+        } catch (IOException ex) {
+            // Connection or authentication error
+            log.error("Failed to connect to Canvas LMS API.", ex);
+            return false;
+        } catch (InterruptedException ex) {
+            log.error("SIS import for '" + classRoom.getShortName() + "' was interrupted.", ex);
+            Thread.currentThread().interrupt();
+            return false;
         }
-        for (Submission submission : submissions) {
-            int canvasUserId = submission.getUserId();
-            String submissionType = submission.getSubmissionType();
-            Date submissionDate = submission.getSubmittedAt();
-            if (submissionDate == null || submission.getLate() == null ||
-                    submission.getLate() || submissionType == null) {
-                log.warn("Student with user id '" + canvasUserId + "' have not delivered assignment for '" + classRoom.getLongName() + "' course.");
-                continue;
+    }
+
+    // Marks students with delivered assignments in course as finished.
+    public boolean harvestExams(Classroom classRoom) {
+        try {
+
+            // Test connection
+            canvasAPI.getRootAccount();
+
+            // Course applications by Canvas user id
+            Map<Integer, CourseApplication> applications = new HashMap<>();
+            for (CourseApplication courseApplication : courseService.getCourseApplications(classRoom)) {
+                Integer canvasUserId = courseApplication.getStudent().getCanvasId();
+                if (canvasUserId != null) applications.putIfAbsent(canvasUserId, courseApplication);
+            }
+
+            // List submissions for every assignment and student in one paged request
+            String canvasCourseId = String.valueOf(classRoom.getCanvasId());
+            SubmissionReader submissionReader = canvasAPI.getReader(SubmissionReader.class, 100);
+            MultipleSubmissionsOptions submissionsOptions = new MultipleSubmissionsOptions(canvasCourseId)
+                    .studentIds(List.of("all"));
+            List<Submission> submissions = submissionReader.listCourseSubmissionsForMultipleAssignments(submissionsOptions);
+            log.debug("Found " + submissions.size() + " submissions in '" + classRoom.getLongName() + "' course.");
+
+            Map<UUID, CourseApplication> finished = new LinkedHashMap<>();
+            for (Submission submission : submissions) {
+                Integer canvasUserId = submission.getUserId();
+                String submissionType = submission.getSubmissionType();
+                Date submissionDate = submission.getSubmittedAt();
+                if (submissionDate == null || submission.getLate() == null ||
+                        submission.getLate() || submissionType == null) {
+                    log.warn("Student with user id '" + canvasUserId + "' have not delivered assignment for '" + classRoom.getLongName() + "' course.");
+                    continue;
+                }
+                CourseApplication courseApplication = applications.get(canvasUserId);
+                if (courseApplication == null) {
+                    log.warn("Unable to find student by user id '" + canvasUserId + "' for submission in '" + classRoom.getLongName() + "' course.");
+                    continue;
+                }
+                if (courseApplication.getStatus() != ApplicationStatus.FINISHED) {
+                    courseApplication.setStatus(ApplicationStatus.FINISHED);
+                    finished.put(courseApplication.getId(), courseApplication);
+                    log.info("Student '" + courseApplication.getStudent().getFullName() + "' have delivered assignment for '" + classRoom.getLongName() + "' course.");
+                }
             }
-            courseApplications.stream()
-                    .filter(courseApplication -> courseApplication.getStudent().getCanvasId() == canvasUserId)
-                    .findAny().ifPresentOrElse((courseApplication) -> {
-                Student student = courseApplication.getStudent();
-                courseApplication.setStatus(ApplicationStatus.FINISHED);
-                courseService.updateCourseApplication(courseApplication);
-                log.info("Student '" + student.getFullName() + "' have delivered assignment for '" + classRoom.getLongName() + "' course.");
-            }, () -> {
-                log.warn("Unable to find student by user id '" + canvasUserId + "' for submission in '" + classRoom.getLongName() + "' course.");
-            });
+
+            // Store status changes
+            courseService.updateCourseApplications(finished.values());
+            log.info("Marked " + finished.size() + " students as finished in '" + classRoom.getLongName() + "' course.");
+            return true;
+
+        } catch (IOException ex) {
+            // Connection or authentication error
+            log.error("Failed to connect to Canvas LMS API.", ex);
+            return false;
         }
+    }
+
+    // Reconciles local enrollments with the course roster in Canvas LMS.
+    public boolean reconcileEnrollments(Classroom classRoom) {
+        if (classRoom.getCanvasId() == null) {
+            log.warn("Course '" + classRoom.getShortName() + "' does not exist in Canvas LMS.");
+            return false;
+        }
+        try {
 
-        log.info("Passed test!");
+            // Get student role
+            Role studentRole = canvasAPI.getStudentRole();
+            if (studentRole == null) {
+                log.error("Could not find the student role in Canvas LMS.");
+                return false;
+            }
 
+            // Canvas course roster by user id
+            Map<Integer, CanvasWebClient.EnrollmentRecord> roster = canvasWebClient.listEnrollments(classRoom.getCanvasId())
+                    .filter(enrollment -> enrollment.getUserId() != null)
+                    .collectMap(CanvasWebClient.EnrollmentRecord::getUserId)
+                    .block();
+            log.debug("Found " + roster.size() + " enrollments in '" + classRoom.getShortName() + "' in Canvas LMS.");
 
+            /*
+             * Join local enrollments with the roster
+             * And collect only the differences
+             */
+            List<RoomLink> changed = new ArrayList<>();
+            List<RoomLink> missing = new ArrayList<>();
+            List<Student> resolved = new ArrayList<>();
+            for (RoomLink roomLink : classRoom.getEnrollments()) {
+                Student student = roomLink.getStudent();
+                Integer userId = student.getCanvasId();
+
+                // Resolve unknown Canvas user id from the shared user index
+                if (userId == null) {
+                    userId = getUser(student, true).map(User::getId).orElse(null);
+                    if (userId != null) {
+                        student.setCanvasId(userId);
+                        student.setCanvasStatus(CanvasStatus.EXISTS);
+                        resolved.add(student);
+                    }
+                }
+                CanvasWebClient.EnrollmentRecord enrollment = userId != null ? roster.get(userId) : null;
+                if (enrollment == null) {
+                    missing.add(roomLink);
+                } else if (roomLink.getCanvasStatus() != CanvasStatus.EXISTS || !enrollment.getId().equals(roomLink.getCanvasId())) {
+                    roomLink.setCanvasStatus(CanvasStatus.EXISTS);
+                    roomLink.setCanvasId(enrollment.getId());
+                    changed.add(roomLink);
+                }
+            }
+            if (!resolved.isEmpty()) studentService.saveChanges(resolved);
+            log.debug("Reconciling '" + classRoom.getShortName() + "': " + changed.size() + " to update, "
+                    + missing.size() + " to enroll.");
+
+            // Enroll only students missing from the roster
+            List<RoomLink> enrolled = Flux.fromIterable(missing)
+                    .flatMap(roomLink -> enrollUserReactive(studentRole, roomLink, roster), reactiveConcurrency)
+                    .collectList()
+                    .block();
+            changed.addAll(enrolled);
+
+            // Store status changes
+            for (List<RoomLink> batch : Lists.partition(changed, enrollBatchSize)) {
+                enrollmentService.saveChanges(batch);
+            }
+            return true;
+
+        } catch (IOException | RuntimeException ex) {
+            // Connection or authentication error
+            log.error("Failed to connect to Canvas LMS API.", ex);
+            return false;
+        }
     }
 
     // Synchronizes users in course with Canvas LMS.
     public boolean syncUsersReadOnly(Classroom classRoom) {
+        return syncUsers(classRoom.getStudents());
+    }
 
-        try {
+    // Synchronizes courses and their users with Canvas LMS, resolving each student once.
+    public boolean syncAll(List<Classroom> classRooms) {
+        if (!syncCourses(classRooms)) return false;
 
-//            test(classRoom);
+        // Load course rosters and merge students enrolled in several courses
+        Map<UUID, Student> students = new LinkedHashMap<>();
+        for (RoomLink roomLink : loadEnrollments(classRooms)) {
+            students.putIfAbsent(roomLink.getStudent().getId(), roomLink.getStudent());
+        }
+        log.debug("Synchronizing " + students.size() + " students in " + classRooms.size() + " courses.");
 
-            List<Student> students = classRoom.getStudents().stream().filter(student -> student.getCanvasStatus() != CanvasStatus.EXISTS)
+        return reactiveEnabled ? await(syncUsersReactive(students.values()), "Synchronized")
+                : syncUsers(students.values());
+    }
+
+    // Synchronizes students with Canvas LMS.
+    public boolean syncUsers(Collection<Student> allStudents) {
+
+        try {
+
+            List<Student> students = allStudents.stream().filter(student -> student.getCanvasStatus() != CanvasStatus.EXISTS)
                     .collect(Collectors.toList());
             if (students.isEmpty()) return true;
 
-            // Authenticate with API
-            OauthToken oauthToken = canvasAPI.getOauthToken();
-            CanvasApiFactory apiFactory = canvasAPI.getApiFactory();
+            // Skip students checked recently or backing off
+            Map<UUID, SyncState> states = syncStateService.getStates(SyncScope.STUDENT,
+                    students.stream().map(Student::getId).collect(Collectors.toList()));
+            students = students.stream().filter(student -> syncStateService.isDue(states.get(student.getId())))
+                    .collect(Collectors.toList());
+            if (students.isEmpty()) {
+                log.debug("All students were checked recently.");
+                return true;
+            }
 
             // Test connection
-            AccountReader acctReader = apiFactory.getReader(AccountReader.class, oauthToken);
-            Account rootAccount = acctReader.getSingleAccount("1").get();
-            log.debug("Connected to Canvas LMS API at '" + rootAccount.getName() + "'.");
-
-            // User Canvas API reader
-            UserReader userReader = apiFactory.getReader(UserReader.class, oauthToken, 100);
+            canvasAPI.getRootAccount();
 
             /*
              * Loop through local students
              * And update locally stored information
              */
+            List<SyncState> changedStates = new ArrayList<>();
             for (Student student : students) {
-
-                // Find user in Canvas LMS and continue if success
-                getUser(userReader, student, false).ifPresentOrElse(user -> {
+                SyncState state = states.computeIfAbsent(student.getId(),
+                        id -> syncStateService.createState(SyncScope.STUDENT, id));
+
+                // Find user in Canvas LMS, students still missing after backoff are looked up directly
+                // since the index may predate their account
+                Optional<User> found = getUser(student, false);
+                if (found.isEmpty() && state.getLastCheckedAt() != null) found = canvasUserIndex.lookup(student.getEmail());
+                found.ifPresentOrElse(user -> {
                     // Update user status
                     student.setCanvasStatus(CanvasStatus.EXISTS);
                     student.setCanvasId(user.getId());
-                    studentService.saveChanges(student);
+                    syncStateService.markFound(state);
                 }, () -> {
                     // Update user status
                     student.setCanvasStatus(CanvasStatus.MISSING);
-                    studentService.saveChanges(student);
+                    syncStateService.markMissing(state);
                 });
+                changedStates.add(state);
             }
+            studentService.saveChanges(students);
+            syncStateService.saveChanges(changedStates);
             return true;
 
         } catch (IOException ex) {
@@ -229,39 +470,63 @@ public class CanvasService {
 
     // Synchronizes local course data with Canvas LMS.
     public boolean syncCourseReadOnly(Classroom classRoom) {
-        try {
+        return syncCourses(List.of(classRoom));
+    }
 
-//            test(classRoom);
+    // Synchronizes local data for several courses with Canvas LMS.
+    public boolean syncCourses(List<Classroom> classRooms) {
+        try {
 
-            // Authenticate with API
-            OauthToken oauthToken = canvasAPI.getOauthToken();
-            CanvasApiFactory apiFactory = canvasAPI.getApiFactory();
+            // Skip courses synchronized recently
+            Map<UUID, SyncState> states = syncStateService.getStates(SyncScope.COURSE,
+                    classRooms.stream().map(Classroom::getId).collect(Collectors.toList()));
+            List<Classroom> due = classRooms.stream()
+                    .filter(classRoom -> classRoom.getCanvasStatus() != CanvasStatus.EXISTS
+                            || !syncStateService.isFresh(states.get(classRoom.getId())))
+                    .collect(Collectors.toList());
+            if (due.isEmpty()) {
+                log.debug("All courses were synchronized recently.");
+                return true;
+            }
 
             // Test connection
-            AccountReader acctReader = apiFactory.getReader(AccountReader.class, oauthToken);
-            Account rootAccount = acctReader.getSingleAccount("1").get();
-            log.debug("Connected to Canvas LMS API at '" + rootAccount.getName() + "'.");
+            canvasAPI.getRootAccount();
 
             // Course Canvas API reader
-            CourseReader courseReader = apiFactory.getReader(CourseReader.class, oauthToken, 100);
-
-            // Search settings for course-search
-            String courseId = "sis_course_id:" + classRoom.getShortName();
-            GetSingleCourseOptions courseOptions = new GetSingleCourseOptions(courseId);
-
-            // Search for course and continue if success
-            courseReader.getSingleCourse(courseOptions).ifPresentOrElse(course -> {
-                // Update locally stored course data
-                classRoom.setCanvasStatus(CanvasStatus.EXISTS);
-                classRoom.setCanvasId(course.getId());
-                courseService.saveChanges(classRoom);
-                log.debug("Found '" + classRoom.getShortName() + "' in Canvas. Local status updated to EXISTS.");
-            }, () -> {
-                // Fails to find course and mark it as missing
-                classRoom.setCanvasStatus(CanvasStatus.MISSING);
-                courseService.saveChanges(classRoom);
-                log.warn("Could not find '" + classRoom.getShortName() + "' in Canvas. Local status updated to MISSING.");
-            });
+            CourseReader courseReader = canvasAPI.getReader(CourseReader.class, 100);
+
+            // Canvas courses by SIS course id
+            Map<String, Course> canvasCourses = new HashMap<>();
+            if (due.size() == 1) {
+                // Search for single course
+                String courseId = "sis_course_id:" + due.get(0).getShortName();
+                courseReader.getSingleCourse(new GetSingleCourseOptions(courseId))
+                        .ifPresent(course -> canvasCourses.put(due.get(0).getShortName().toLowerCase(), course));
+            } else {
+                // List every course in account once
+                List<Course> courses = courseReader.listActiveCoursesInAccount(new ListActiveCoursesInAccountOptions("1"));
+                for (Course course : courses) {
+                    if (course.getSisCourseId() != null) canvasCourses.putIfAbsent(course.getSisCourseId().toLowerCase(), course);
+                }
+                log.debug("Found " + courses.size() + " courses in Canvas LMS.");
+            }
+
+            // Update locally stored course data
+            for (Classroom classRoom : due) {
+                Course course = canvasCourses.get(classRoom.getShortName().toLowerCase());
+                if (course != null) {
+                    classRoom.setCanvasStatus(CanvasStatus.EXISTS);
+                    classRoom.setCanvasId(course.getId());
+                    log.debug("Found '" + classRoom.getShortName() + "' in Canvas. Local status updated to EXISTS.");
+                } else {
+                    // Fails to find course and mark it as missing
+                    classRoom.setCanvasStatus(CanvasStatus.MISSING);
+                    log.warn("Could not find '" + classRoom.getShortName() + "' in Canvas. Local status updated to MISSING.");
+                }
+            }
+            courseService.saveChanges(due);
+            recordCourseSync(due.stream().filter(classRoom -> classRoom.getCanvasStatus() == CanvasStatus.EXISTS)
+                    .collect(Collectors.toList()));
             return true;
 
         } catch (IOException ex) {
@@ -271,35 +536,185 @@ public class CanvasService {
         }
     }
 
-    // Search for user in Canvas LMS.
-    public Optional<User> getUser(UserReader userReader, Student student, boolean allowNameSearch) throws IOException {
+    // Records successful lookup of courses in Canvas LMS
+    private void recordCourseSync(List<Classroom> classRooms) {
+        Map<UUID, SyncState> states = syncStateService.getStates(SyncScope.COURSE,
+                classRooms.stream().map(Classroom::getId).collect(Collectors.toList()));
+        List<SyncState> changedStates = new ArrayList<>();
+        for (Classroom classRoom : classRooms) {
+            SyncState state = states.computeIfAbsent(classRoom.getId(),
+                    id -> syncStateService.createState(SyncScope.COURSE, id));
+            syncStateService.markFound(state);
+            changedStates.add(state);
+        }
+        syncStateService.saveChanges(changedStates);
+    }
+
+    // Loads enrollments for courses with their students in one query
+    private List<RoomLink> loadEnrollments(List<Classroom> classRooms) {
+        return enrollmentService.getRosters(classRooms);
+    }
+
+    // Synchronizes students with Canvas LMS, keeping many lookups in flight.
+    public Mono<Integer> syncUsersReactive(Collection<Student> allStudents) {
+        return Mono.fromCallable(() -> {
+            // Skip existing students and students checked recently or backing off
+            List<Student> students = allStudents.stream().filter(student -> student.getCanvasStatus() != CanvasStatus.EXISTS)
+                    .collect(Collectors.toList());
+            Map<UUID, SyncState> states = syncStateService.getStates(SyncScope.STUDENT,
+                    students.stream().map(Student::getId).collect(Collectors.toList()));
+            Map<Student, SyncState> due = new LinkedHashMap<>();
+            for (Student student : students) {
+                SyncState state = states.get(student.getId());
+                if (!syncStateService.isDue(state)) continue;
+                due.put(student, state != null ? state : syncStateService.createState(SyncScope.STUDENT, student.getId()));
+            }
+            return due;
+        }).subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(due -> Flux.fromIterable(due.entrySet()))
+                .flatMap(entry -> {
+                    Student student = entry.getKey();
+                    SyncState state = entry.getValue();
+                    return findUserIdReactive(student)
+                            .map(userId -> {
+                                // Update user status
+                                student.setCanvasStatus(CanvasStatus.EXISTS);
+                                student.setCanvasId(userId);
+                                syncStateService.markFound(state);
+                                return entry;
+                            })
+                            .switchIfEmpty(Mono.fromSupplier(() -> {
+                                // Update user status
+                                student.setCanvasStatus(CanvasStatus.MISSING);
+                                syncStateService.markMissing(state);
+                                return entry;
+                            }))
+                            .onErrorResume(ex -> {
+                                log.error("Failed to look up '" + student.getFullName() + "' in Canvas LMS.", ex);
+                                return Mono.empty();
+                            });
+                }, reactiveConcurrency)
+                .buffer(enrollBatchSize)
+                .publishOn(Schedulers.boundedElastic())
+                .map(batch -> {
+                    studentService.saveChanges(batch.stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+                    syncStateService.saveChanges(batch.stream().map(Map.Entry::getValue).collect(Collectors.toList()));
+                    return batch.size();
+                })
+                .reduce(0, Integer::sum);
+    }
+
+    // Add students to courses in Canvas LMS, keeping many enrollments in flight.
+    public Mono<Integer> enrollStudentsReactive(List<Classroom> classRooms) {
+        return Mono.fromCallable(() -> canvasAPI.getStudentRole())
+                .subscribeOn(Schedulers.boundedElastic())
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Could not find the student role in Canvas LMS.")))
+                .flatMapMany(studentRole -> Flux.fromIterable(loadEnrollments(classRooms))
+                        .filter(roomLink -> roomLink.getCanvasStatus() != CanvasStatus.EXISTS)
+                        .filter(roomLink -> roomLink.getCourse().getCanvasId() != null)
+                        .flatMap(roomLink -> enrollUserReactive(studentRole, roomLink, Map.of()), reactiveConcurrency))
+                .buffer(enrollBatchSize)
+                .publishOn(Schedulers.boundedElastic())
+                .map(batch -> {
+                    enrollmentService.saveChanges(batch);
+                    return batch.size();
+                })
+                .reduce(0, Integer::sum);
+    }
 
-        // Search for user in Canvas LMS with name
+    // Enrolls a single user in Canvas LMS without blocking, unless already in the course roster.
+    private Mono<RoomLink> enrollUserReactive(Role studentRole, RoomLink roomLink,
+                                              Map<Integer, CanvasWebClient.EnrollmentRecord> roster) {
+        Student student = roomLink.getStudent();
+        Classroom classRoom = roomLink.getCourse();
         String name = student.getFirstName() + " " + student.getLastName();
-        GetUsersInAccountOptions options = new GetUsersInAccountOptions("1");
 
-        // Email search result
-        options.searchTerm(student.getEmail());
-        List<User> mailSearchResult = userReader.getUsersInAccount(options);
-        Optional<User> opt = mailSearchResult.stream().filter(user -> (user.getLoginId() != null && user.getLoginId().equalsIgnoreCase(student.getEmail())
-                || (user.getEmail() != null && user.getEmail().equalsIgnoreCase(student.getEmail())))).findFirst();
+        // Reuse known Canvas user id and look up the rest in the user index
+        Mono<Integer> userId = student.getCanvasStatus() == CanvasStatus.EXISTS && student.getCanvasId() != null
+                ? Mono.just(student.getCanvasId())
+                : findUserIdReactive(student);
+
+        return userId
+                .flatMap(id -> roster.containsKey(id) ? Mono.just(roster.get(id))
+                        : canvasWebClient.enroll(classRoom.getCanvasId(), id, studentRole.getId()))
+                .map(enrollment -> {
+                    // Successful enrollment
+                    roomLink.setCanvasId(enrollment.getId());
+                    roomLink.setCanvasStatus(CanvasStatus.EXISTS);
+                    log.debug("Enrolled '" + name + "' to '" + classRoom.getShortName() + "'.");
+                    return roomLink;
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    // No user was found in Canvas LMS via API
+                    roomLink.setCanvasStatus(CanvasStatus.MISSING);
+                    log.warn("Could not find '" + name + "', and was thereby not enrolled to '" + classRoom.getShortName() + "'.");
+                    return roomLink;
+                }))
+                .onErrorResume(ex -> {
+                    // An unknown error occurred while enrolling user
+                    log.error("Failed to enroll '" + name + "'.", ex);
+                    roomLink.setCanvasStatus(CanvasStatus.MISSING);
+                    return Mono.just(roomLink);
+                });
+    }
+
+    // Find Canvas user id in the shared user index, which may reload from Canvas LMS off the event loop.
+    private Mono<Integer> findUserIdReactive(Student student) {
+        return Mono.fromCallable(() -> getUser(student, true).map(User::getId).orElse(null))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
 
-        // If email search success
+    // Waits for a reactive operation to finish
+    private boolean await(Mono<Integer> operation, String action) {
+        try {
+            Integer count = operation.block();
+            log.debug(action + " " + count + " records in Canvas LMS.");
+            return true;
+        } catch (RuntimeException ex) {
+            // Connection or authentication error
+            log.error("Failed to connect to Canvas LMS API.", ex);
+            return false;
+        }
+    }
+
+    // Search for user in Canvas LMS.
+    public Optional<User> getUser(Student student, boolean allowNameSearch) throws IOException {
+
+        // Email search result
+        Optional<User> opt = canvasUserIndex.findByLoginOrEmail(student.getEmail());
         if (opt.isPresent()) {
             return opt;
         }
+
         // Alternative email address
-        else if (student.getLogin() != null) {
-            mailSearchResult = userReader.getUsersInAccount(options);
-            opt = mailSearchResult.stream().filter(user -> (user.getLoginId() != null && user.getLoginId().equalsIgnoreCase(student.getEmail())
-                    || (user.getEmail() != null && user.getEmail().equalsIgnoreCase(student.getEmail())))).findFirst();
+        if (student.getLogin() != null) {
+            opt = canvasUserIndex.findByLoginOrEmail(student.getLogin());
             if (opt.isPresent()) return opt;
         }
+
         // Search by name and return result
-        options.searchTerm(name);
-        List<User> nameSearchResult = userReader.getUsersInAccount(options);
-        opt = nameSearchResult.stream().filter(user -> user.getName().equalsIgnoreCase(name)).findFirst();
-        return opt;
+        return canvasUserIndex.findByName(student.getFirstName() + " " + student.getLastName());
+    }
+
+    // Outcome of a single enrollment task
+    private static class EnrollmentResult {
+
+        private final RoomLink roomLink;
+        private final CanvasStatus canvasStatus;
+        private final Long canvasId;
+
+        private EnrollmentResult(RoomLink roomLink, CanvasStatus canvasStatus, Long canvasId) {
+            this.roomLink = roomLink;
+            this.canvasStatus = canvasStatus;
+            this.canvasId = canvasId;
+        }
+
+        // Copies the outcome to the local enrollment
+        private RoomLink apply() {
+            if (canvasId != null) roomLink.setCanvasId(canvasId);
+            roomLink.setCanvasStatus(canvasStatus);
+            return roomLink;
+        }
     }
 
 }
\ No newline at end of file
@@ -4,18 +4,24 @@ import lombok.extern.slf4j.Slf4j;
 import no.odit.gatevas.dao.CourseApplicationRepo;
 import no.odit.gatevas.dao.CourseRepo;
 import no.odit.gatevas.dao.CourseTypeRepo;
+import no.odit.gatevas.dao.RosterRow;
+import no.odit.gatevas.misc.ImportBatch;
+import no.odit.gatevas.misc.ImportPlan;
 import no.odit.gatevas.misc.SheetImportCSV;
 import no.odit.gatevas.model.*;
 import no.odit.gatevas.type.ApplicationStatus;
 import no.odit.gatevas.type.CanvasStatus;
+import no.odit.gatevas.type.ImportChange;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -36,30 +42,64 @@ public class CourseService {
     @Autowired
     private SheetImportCSV sheetImportCSV;
 
+    @Value("${gatevas.course.active_months:6}")
+    private long activeMonths;
+
     // Save changes for course application
     public void updateCourseApplication(CourseApplication courseApplication) {
         courseApplicationRepo.saveAndFlush(courseApplication);
     }
 
+    // Save changes for course applications as one batch
+    public void updateCourseApplications(Collection<CourseApplication> courseApplications) {
+        courseApplicationRepo.saveAll(courseApplications);
+        courseApplicationRepo.flush();
+    }
+
     // Get course applications by course
     public List<CourseApplication> getCourseApplications(Classroom course) {
         Set<RoomLink> enrollments = course.getEnrollments();
         List<CourseApplication> applications = getCourseTypeApplications(course.getType());
-        List<Student> students = enrollments.stream().map(enrollment -> enrollment.getStudent()).collect(Collectors.toList());
-        return applications.stream().filter(application ->
-                        students.stream().anyMatch(student -> student.getId().equals(application.getStudent().getId())))
+        Set<UUID> studentIds = enrollments.stream().map(enrollment -> enrollment.getStudent().getId()).collect(Collectors.toSet());
+        return applications.stream().filter(application -> studentIds.contains(application.getStudent().getId()))
                 .collect(Collectors.toList());
     }
 
+    // Get every course application
+    public List<CourseApplication> getAllCourseApplications() {
+        return courseApplicationRepo.findAll();
+    }
+
+    // Stream applicants of course type in one query, must be consumed within a transaction
+    public Stream<RosterRow> streamRoster(CourseType courseType) {
+        return courseApplicationRepo.streamRoster(courseType);
+    }
+
+    // Stream applications with status in one query, must be consumed within a transaction
+    public Stream<RosterRow> streamApplications(Collection<ApplicationStatus> statuses) {
+        return courseApplicationRepo.streamApplications(statuses);
+    }
+
+    // Accepts waitlisted applications of enrolled students in one update
+    public int acceptEnrolledApplications() {
+        return courseApplicationRepo.acceptEnrolledApplications();
+    }
+
+    // Get emails of waitlisted applicants of course type that are enrolled and due to be accepted
+    public Set<String> getEnrolledWaitlistEmails(CourseType courseType) {
+        return courseApplicationRepo.findEnrolledWaitlistEmails(courseType);
+    }
+
     // Get course applications by type
     public List<CourseApplication> getCourseTypeApplications(CourseType courseType) {
         return courseApplicationRepo.findByCourse(courseType);
     }
 
     // Imports students from single course list
-    public Optional<Set<Student>> importStudents(File csvFile, Classroom course, boolean useComma) {
+    public Optional<Integer> importStudents(File csvFile, Classroom course, boolean useComma, Consumer<Student> onStudent) {
         try {
-            Set<Student> students = sheetImportCSV.processSheet(csvFile, course.getType(), "Cp1252", useComma);
+            int students = sheetImportCSV.processSheet(csvFile, "course:" + course.getShortName(), course.getType(),
+                    "Cp1252", useComma, onStudent);
             return Optional.of(students);
         } catch (Exception ex) {
             log.error("Failed to import students.", ex);
@@ -67,11 +107,28 @@ public class CourseService {
         }
     }
 
+    // Evaluates import of single course list without writing to storage
+    public Optional<ImportPlan> planImport(File csvFile, Classroom course, boolean useComma) {
+        try {
+            return Optional.of(sheetImportCSV.plan(batch -> sheetImportCSV.processSheet(csvFile, "course:" + course.getShortName(),
+                    course.getType(), "Cp1252", useComma, batch), course));
+        } catch (Exception ex) {
+            log.error("Failed to plan import of students.", ex);
+            return Optional.empty();
+        }
+    }
+
     // Saves changes for course to storage
     public void saveChanges(Classroom course) {
         courseRepo.saveAndFlush(course);
     }
 
+    // Saves changes for courses to storage as one batch
+    public void saveChanges(Collection<Classroom> courses) {
+        courseRepo.saveAll(courses);
+        courseRepo.flush();
+    }
+
     // Creates a new course in storage
     public Classroom addCourse(Classroom course) {
         course.setCanvasStatus(CanvasStatus.UNKNOWN);
@@ -91,6 +148,15 @@ public class CourseService {
         return courseRepo.findAll();
     }
 
+    // Find courses created within the active period
+    public List<Classroom> getActiveCourses() {
+        LocalDateTime afterTime = LocalDateTime.now().minusMonths(activeMonths);
+        return getAllCourses().stream()
+                .filter(course -> course.getCreatedAt().isAfter(afterTime))
+                .filter(course -> course.getCanvasStatus() != CanvasStatus.IGNORE)
+                .collect(Collectors.toList());
+    }
+
     // Gets course from storage
     public Optional<Classroom> getCourse(String name) {
         return getAllCourses().stream()
@@ -119,10 +185,14 @@ public class CourseService {
         return courseTypeRepo.findAll();
     }
 
-    public CourseApplication createCourseApplication(Student student, CourseType courseType, Boolean uptake) {
+    public CourseApplication createCourseApplication(Student student, CourseType courseType, Boolean uptake, ImportBatch batch) {
 
+        // Applications of new students are never stored
+        boolean stored = student.getId() != null;
         CourseApplication apply = new CourseApplication();
-        Optional<CourseApplication> optCourseApply = courseApplicationRepo.findByStudentAndCourse(student, courseType);
+        Optional<CourseApplication> optCourseApply = batch.findCourseApplication(student, courseType)
+                .or(() -> stored ? batch.findStoredCourseApplication(student, courseType, courseApplicationRepo::findByStudentAndCourse)
+                        : Optional.empty());
         if (optCourseApply.isPresent()) {
             apply = optCourseApply.get();
         } else {
@@ -130,21 +200,26 @@ public class CourseService {
             apply.setStudent(student);
             apply.setUptake(true);
             apply.setStatus(ApplicationStatus.WAITLIST);
+            batch.recordChange(ImportChange.NEW_APPLICATION, student.getFirstName(), student.getLastName(), student.getEmail(),
+                    courseType.getShortName());
         }
 
         // Update status
-        if (apply.getStatus() == ApplicationStatus.WAITLIST) {
-            List<Classroom> courses = courseRepo.findByType(courseType);
+        if (apply.getStatus() == ApplicationStatus.WAITLIST && stored) {
+            List<Classroom> courses = batch.getCourses(courseType, courseRepo::findByType);
             for (Classroom course : courses) {
-                Optional<RoomLink> optEnroll = enrollmentService.getEnrollment(student, course);
-                if (optEnroll.isPresent()) {
+                if (batch.isEnrolled(student, course, enrollmentService::getEnrollment)
+                        && apply.getStatus() == ApplicationStatus.WAITLIST) {
                     apply.setUptake(uptake);
                     apply.setStatus(ApplicationStatus.ACCEPTED);
+                    batch.recordChange(ImportChange.ACCEPTED_APPLICATION, student.getFirstName(), student.getLastName(),
+                            student.getEmail(), courseType.getShortName() + " (" + course.getShortName() + ")");
                 }
             }
         }
 
-        return courseApplicationRepo.findById(courseApplicationRepo.saveAndFlush(apply).getId()).get();
+        batch.saveCourseApplication(student, courseType, apply);
+        return apply;
     }
 
 }
\ No newline at end of file
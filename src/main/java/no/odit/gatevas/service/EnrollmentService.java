@@ -2,6 +2,8 @@ package no.odit.gatevas.service;
 
 import lombok.extern.slf4j.Slf4j;
 import no.odit.gatevas.dao.EnrollmentRepo;
+import no.odit.gatevas.dao.EnrollmentRepo.EnrollmentKey;
+import no.odit.gatevas.dao.RosterRow;
 import no.odit.gatevas.model.Classroom;
 import no.odit.gatevas.model.RoomLink;
 import no.odit.gatevas.model.Student;
@@ -10,9 +12,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -38,6 +42,27 @@ public class EnrollmentService {
         enrollmentRepo.saveAndFlush(roomLink);
     }
 
+    // Saves changes in enrollments to storage as one batch
+    public void saveChanges(Collection<RoomLink> roomLinks) {
+        enrollmentRepo.saveAll(roomLinks);
+        enrollmentRepo.flush();
+    }
+
+    // Get enrollments of courses with their students in one query
+    public List<RoomLink> getRosters(Collection<Classroom> courses) {
+        return courses.isEmpty() ? List.of() : enrollmentRepo.findRosters(courses);
+    }
+
+    // Stream enrolled students of courses in one query, must be consumed within a transaction
+    public Stream<RosterRow> streamRosters(Collection<Classroom> courses) {
+        return courses.isEmpty() ? Stream.empty() : enrollmentRepo.streamRosters(courses);
+    }
+
+    // Get student and course of every enrollment
+    public List<EnrollmentKey> getEnrollmentKeys() {
+        return enrollmentRepo.findAllKeys();
+    }
+
     // Crates a new enrollment for student
     public RoomLink createEnrollment(Student student, Classroom course) {
 
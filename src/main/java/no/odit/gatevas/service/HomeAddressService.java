@@ -1,34 +1,35 @@
 package no.odit.gatevas.service;
 
 import no.odit.gatevas.dao.HomeAddressRepo;
+import no.odit.gatevas.misc.ImportBatch;
 import no.odit.gatevas.model.HomeAddress;
 import no.odit.gatevas.model.Student;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Optional;
+
 @Service
 public class HomeAddressService {
 
     @Autowired
     private HomeAddressRepo homeAddressRepo;
 
-    public void updateHomeAddress(Student student, String streetAddress, int zipCode, String city) {
-        homeAddressRepo.findByStudent(student).ifPresentOrElse(address -> {
-            // Update current home address
-            address.setCity(city);
-            address.setZipCode(zipCode);
-            address.setStreetAddress(streetAddress);
-            homeAddressRepo.saveAndFlush(address);
-        }, () -> {
-            // Create new home address
-            HomeAddress address = HomeAddress.builder()
-                    .student(student)
-                    .streetAddress(streetAddress)
-                    .zipCode(zipCode)
-                    .city(city)
-                    .build();
-            homeAddressRepo.saveAndFlush(address);
-        });
+    // Creates or updates home address, leaving it in the import batch
+    public void updateHomeAddress(Student student, String streetAddress, int zipCode, String city, ImportBatch batch) {
+        HomeAddress address = batch.findHomeAddress(student)
+                .or(() -> Optional.ofNullable(student.getId() != null ? student.getHomeAddress() : null))
+                .orElseGet(() -> HomeAddress.builder().student(student).build());
+        address.setCity(city);
+        address.setZipCode(zipCode);
+        address.setStreetAddress(streetAddress);
+        batch.saveHomeAddress(student, address);
+    }
+
+    // Saves home addresses to storage as one batch
+    public void saveChanges(Collection<HomeAddress> addresses) {
+        homeAddressRepo.saveAll(addresses);
     }
 
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package no.odit.gatevas.service;
 
 import lombok.extern.slf4j.Slf4j;
 import no.odit.gatevas.dao.PhoneRepo;
+import no.odit.gatevas.misc.ImportBatch;
 import no.odit.gatevas.model.Classroom;
 import no.odit.gatevas.model.Phone;
 import no.odit.gatevas.model.RoomLink;
@@ -15,6 +16,7 @@ import javax.net.ssl.HttpsURLConnection;
 import java.io.DataOutputStream;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Collection;
 
 @Component
 @Slf4j
@@ -38,8 +40,8 @@ public class PhoneService {
     @Autowired
     private CanvasService canvasService;
 
-    // Creates a Phone and saves to storage
-    public Phone createPhone(Integer phoneNumber) {
+    // Creates a Phone, leaving it in the import batch
+    public Phone createPhone(Integer phoneNumber, ImportBatch batch) {
 
         if (phoneNumber == null || phoneNumber == 0) return null;
 
@@ -47,11 +49,16 @@ public class PhoneService {
         Phone phone = new Phone();
         phone.setPhoneNumber(phoneNumber);
         phone.setCountryCode(country);
-        phone = phoneRepo.saveAndFlush(phone);
+        batch.savePhone(phone);
         log.debug("CREATE PHONE -> " + phone.toString());
         return phone;
     }
 
+    // Saves phones to storage as one batch
+    public void saveChanges(Collection<Phone> phones) {
+        phoneRepo.saveAll(phones);
+    }
+
     // Sends SMS to students in course with enrollment details
     public boolean sendSMS(Classroom classRoom) {
 
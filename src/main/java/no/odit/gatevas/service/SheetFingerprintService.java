@@ -0,0 +1,67 @@
+package no.odit.gatevas.service;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import no.odit.gatevas.dao.SheetFingerprintRepo;
+import no.odit.gatevas.misc.SheetParsers;
+import no.odit.gatevas.misc.StudentResolver;
+import no.odit.gatevas.model.SheetFingerprint;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@Slf4j
+public class SheetFingerprintService {
+
+    @Autowired
+    private SheetFingerprintRepo sheetFingerprintRepo;
+
+    // Get stored fingerprints of sheet, keyed by email
+    public Map<String, SheetFingerprint> getFingerprints(String sheetKey) {
+        Map<String, SheetFingerprint> fingerprints = new ConcurrentHashMap<>();
+        sheetFingerprintRepo.findBySheetKey(sheetKey).forEach(fingerprint -> fingerprints.put(fingerprint.getEmail(), fingerprint));
+        log.debug("Loaded " + fingerprints.size() + " fingerprints for '" + sheetKey + "'.");
+        return fingerprints;
+    }
+
+    // Hash of normalized record values
+    public String hash(CSVRecord record) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (String value : record) {
+            hasher.putString(SheetParsers.normalize(value), StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    // Sets new hash on fingerprint of row, creating it for new rows
+    public SheetFingerprint updateFingerprint(Map<String, SheetFingerprint> fingerprints, String sheetKey, String email, String hash) {
+        String key = StudentResolver.getEmailKey(email);
+        SheetFingerprint fingerprint = fingerprints.computeIfAbsent(key, k -> {
+            SheetFingerprint created = new SheetFingerprint();
+            created.setSheetKey(sheetKey);
+            created.setEmail(k);
+            return created;
+        });
+        fingerprint.setHash(hash);
+        return fingerprint;
+    }
+
+    // Whether row matches the fingerprint from last import
+    public boolean isUnchanged(Map<String, SheetFingerprint> fingerprints, String email, String hash) {
+        SheetFingerprint fingerprint = fingerprints.get(StudentResolver.getEmailKey(email));
+        return fingerprint != null && hash.equals(fingerprint.getHash());
+    }
+
+    // Save fingerprints to storage as one batch
+    public void saveChanges(Collection<SheetFingerprint> fingerprints) {
+        sheetFingerprintRepo.saveAll(fingerprints);
+    }
+
+}
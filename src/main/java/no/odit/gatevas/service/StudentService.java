@@ -3,11 +3,14 @@ package no.odit.gatevas.service;
 import lombok.extern.slf4j.Slf4j;
 import no.odit.gatevas.dao.StudentRepo;
 import no.odit.gatevas.misc.GeneralUtil;
+import no.odit.gatevas.misc.ImportBatch;
 import no.odit.gatevas.misc.SheetExportCSV;
+import no.odit.gatevas.misc.StudentResolver;
 import no.odit.gatevas.model.Classroom;
 import no.odit.gatevas.model.Phone;
 import no.odit.gatevas.model.Student;
 import no.odit.gatevas.type.CanvasStatus;
+import no.odit.gatevas.type.ImportChange;
 import no.odit.gatevas.type.StudentStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -15,6 +18,7 @@ import org.springframework.stereotype.Service;
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -35,57 +39,42 @@ public class StudentService {
     @Autowired
     private CanvasService canvasService;
 
-    // Creates a new student or get existing
-    public Student createStudent(String email, String firstName, String lastName, LocalDate birth, Integer phoneNumber) {
+    @Autowired
+    private FieldCipher fieldCipher;
+
+    // Creates a new student or get existing, leaving changes in the import batch
+    public Student createStudent(String email, String firstName, String lastName, LocalDate birth, Integer phoneNumber,
+                                 String socialSecurityIndex, ImportBatch batch) {
 
         // Detect and throw decoding error
         if (firstName.matches("[^a-zA-Z0-9 ÆØÅæøå]") || lastName.matches("[^a-zA-Z0-9 ÆØÅæøå]")
                 || firstName.contains("�") || lastName.contains("�")) {
-            throw new Error("Error in charset decoding for " + firstName + " " + lastName + ".");
-        }
-
-        // Return existing student (email)
-        Optional<Student> existingEmail = getUserByEmail(email);
-        if (existingEmail.isPresent()) {
-            log.debug("EMAIL ALREADY EXIST -> " + existingEmail.get());
-            return fixStudentDetails(existingEmail.get(), firstName, lastName, email);
-        }
-
-        // Return existing student (name & birth)
-        Optional<Student> existingName = getUserByNameAndBirth(firstName, lastName, birth);
-        if (existingName.isPresent()) {
-            log.debug("NAME ALREADY EXIST -> " + existingName.get());
-            return fixStudentDetails(existingName.get(), firstName, lastName, email);
+            throw new IllegalArgumentException("Error in charset decoding for " + firstName + " " + lastName + ".");
         }
 
-        // Return existing student (login)
-        Optional<Student> existingLogin = getUserByLogin(email);
-        if (existingLogin.isPresent()) {
-            log.debug("LOGIN ALREADY EXIST -> " + existingLogin.get());
-            return fixStudentDetails(existingLogin.get(), firstName, lastName, email);
+        // Return student from earlier row in batch (social security index, email, name & birth)
+        Optional<Student> pending = batch.findStudentBySocialSecurityIndex(socialSecurityIndex)
+                .or(() -> batch.findStudent(email)).or(() -> batch.findStudent(firstName, lastName, birth));
+        if (pending.isPresent()) {
+            log.debug("STUDENT ALREADY IN BATCH -> " + pending.get());
+            return fixStudentDetails(pending.get(), firstName, lastName, email, false, batch);
         }
 
-        // Return existing student (name & null-birth)
-        if (birth != null) {
-            try {
-                Optional<Student> existingNonBirth = getUserByNameAndBirth(firstName, lastName, null);
-                if (existingNonBirth.isPresent()) {
-                    log.debug("NAME WITH NON-BIRTH ALREADY EXIST -> " + existingNonBirth.get());
-                    return fixStudentDetails(existingNonBirth.get(), firstName, lastName, email);
-                }
-
-                Optional<Student> existingNullBirth = getUserByNameAndNullBirth(firstName, lastName);
-                if (existingNullBirth.isPresent()) {
-                    log.debug("NAME WITH NULL-BIRTH ALREADY EXIST -> " + existingNullBirth.get());
-                    return fixStudentDetails(existingNullBirth.get(), firstName, lastName, email);
-                }
-            } catch (Exception exception) {
-                log.warn("Failed to retrieve existing student by name without birth date", exception);
+        // Return existing student (social security index, email, name & birth, login, name & null-birth)
+        Optional<Student> existing = batch.getResolver().resolve(socialSecurityIndex, email, firstName, lastName, birth)
+                .flatMap(id -> batch.findStoredStudent(id, studentRepo::findById));
+        if (existing.isPresent()) {
+            log.debug("STUDENT ALREADY EXIST -> " + existing.get());
+            boolean merged = !existing.get().getEmail().equalsIgnoreCase(email.trim());
+            if (merged) {
+                batch.recordChange(ImportChange.MERGED_STUDENT, firstName, lastName, email,
+                        "Matched stored student " + existing.get().getFullName() + " <" + existing.get().getEmail() + ">");
             }
+            return trackStudent(existing.get(), firstName, lastName, email, birth, merged, batch);
         }
 
         // Create new student
-        Phone phone = phoneService.createPhone(phoneNumber);
+        Phone phone = phoneService.createPhone(phoneNumber, batch);
         Student student = new Student();
         student.setEmail(email.trim());
         student.setFirstName(firstName.trim());
@@ -97,29 +86,50 @@ public class StudentService {
         student.setExportedToCSV(false);
         student.setCanvasStatus(CanvasStatus.UNKNOWN);
         student.setStudentStatus(StudentStatus.ALLOWED);
-        student = studentRepo.saveAndFlush(student);
+        batch.trackStudent(student, birth);
+        batch.saveStudent(student);
+        batch.recordChange(ImportChange.NEW_STUDENT, firstName, lastName, email, null);
         log.debug("CREATED STUDENT -> " + student);
         return student;
     }
 
-    // Fix student name and email address
-    public Student fixStudentDetails(Student student, String firstName, String lastName, String emailAddress) {
+    // Remember existing student in batch and fix its details
+    private Student trackStudent(Student student, String firstName, String lastName, String emailAddress, LocalDate birth,
+                                 boolean merged, ImportBatch batch) {
+        batch.trackStudent(student, birth);
+        return fixStudentDetails(student, firstName, lastName, emailAddress, merged, batch);
+    }
+
+    // Fix student name and email address, a merged student is already reported with its replaced email
+    public Student fixStudentDetails(Student student, String firstName, String lastName, String emailAddress, boolean merged,
+                                     ImportBatch batch) {
         if (student.getFullName().matches("[^a-zA-Z0-9 ÆØÅæøå]") || student.getFullName().contains("�")) {
             log.warn("Detected encoding error in student details for " + student.getFullName() + ".");
+            batch.recordChange(ImportChange.NAME_FIX, firstName, lastName, emailAddress, "Replaces " + student.getFullName());
             student.setFirstName(firstName);
             student.setLastName(lastName);
-            student = studentRepo.saveAndFlush(student);
+            batch.saveStudent(student);
             log.info("Fixed encoding in student details for " + firstName + " " + lastName + ".");
         }
         if (!student.getEmail().equalsIgnoreCase(emailAddress)) {
+            if (!merged) {
+                batch.recordChange(ImportChange.EMAIL_CHANGE, firstName, lastName, emailAddress, "Replaces " + student.getEmail());
+            }
             student.setLogin(student.getEmail());
             student.setEmail(emailAddress);
-            student = studentRepo.saveAndFlush(student);
+            batch.saveStudent(student);
             log.info("Updated email address for " + firstName + " " + lastName + " to " + emailAddress + ".");
         }
         return student;
     }
 
+    // Creates resolver with keys of every stored student
+    public StudentResolver createResolver() {
+        StudentResolver resolver = new StudentResolver(studentRepo.findAllKeys());
+        log.debug("Loaded " + resolver.size() + " student keys.");
+        return resolver;
+    }
+
     // Exports students in course to a CSV file
     public boolean exportStudentsToCSV(Classroom course, File file) {
 
@@ -151,11 +161,22 @@ public class StudentService {
         }
     }
 
+    // Get every student from storage
+    public List<Student> getAllStudents() {
+        return studentRepo.findAll();
+    }
+
     // Save student to storage
     public void saveChanges(Student student) {
         studentRepo.saveAndFlush(student);
     }
 
+    // Save students to storage as one batch
+    public void saveChanges(Collection<Student> students) {
+        studentRepo.saveAll(students);
+        studentRepo.flush();
+    }
+
     // Get student from storage by name
     @Deprecated
     public Optional<Student> getUserByName(String firstName, String lastName) {
@@ -177,6 +198,17 @@ public class StudentService {
         return studentRepo.findByEmail(email.trim());
     }
 
+    // Get student from storage by social security number, through its blind index
+    public Optional<Student> getUserBySocialSecurityNumber(String socialSecurityNumber) {
+        return studentRepo.findBySocialSecurityIndex(fieldCipher.blindIndex(socialSecurityNumber)).stream().findFirst();
+    }
+
+    // Get student from storage by social security number or email
+    public Optional<Student> getUserByIdentifier(String identifier) {
+        return identifier.replaceAll("\\s", "").matches("[0-9]{11}") ? getUserBySocialSecurityNumber(identifier)
+                : getUserByEmail(identifier);
+    }
+
     // Get student from storage by login
     public Optional<Student> getUserByLogin(String login) {
         return studentRepo.findByLoginIsNotNullAndLogin(login.trim());
@@ -0,0 +1,95 @@
+package no.odit.gatevas.service;
+
+import lombok.extern.slf4j.Slf4j;
+import no.odit.gatevas.dao.SyncStateRepo;
+import no.odit.gatevas.model.SyncState;
+import no.odit.gatevas.type.SyncScope;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class SyncStateService {
+
+    @Autowired
+    private SyncStateRepo syncStateRepo;
+
+    @Value("${canvas_lms.sync.fresh_minutes:60}")
+    private long freshMinutes;
+
+    @Value("${canvas_lms.sync.backoff_minutes:15}")
+    private long backoffMinutes;
+
+    @Value("${canvas_lms.sync.backoff_max_hours:24}")
+    private long backoffMaxHours;
+
+    // Get sync states for targets, keyed by target id
+    public Map<UUID, SyncState> getStates(SyncScope scope, Collection<UUID> targetIds) {
+        return syncStateRepo.findByScopeAndTargetIdIn(scope, targetIds).stream()
+                .collect(Collectors.toMap(SyncState::getTargetId, Function.identity()));
+    }
+
+    // Get sync state for target or a new unsaved state
+    public SyncState getState(SyncScope scope, UUID targetId) {
+        return syncStateRepo.findByScopeAndTargetId(scope, targetId).orElseGet(() -> createState(scope, targetId));
+    }
+
+    // Creates a new unsaved sync state
+    public SyncState createState(SyncScope scope, UUID targetId) {
+        SyncState state = new SyncState();
+        state.setScope(scope);
+        state.setTargetId(targetId);
+        state.setFailures(0);
+        return state;
+    }
+
+    // Whether target should be checked against Canvas LMS again
+    public boolean isDue(SyncState state) {
+        return state == null || state.getNextCheckAt() == null || !LocalDateTime.now().isBefore(state.getNextCheckAt());
+    }
+
+    // Whether target was synchronized within the freshness window
+    public boolean isFresh(SyncState state) {
+        return state != null && state.getLastSuccessAt() != null
+                && state.getLastSuccessAt().isAfter(LocalDateTime.now().minusMinutes(freshMinutes));
+    }
+
+    // Record a successful check
+    public void markFound(SyncState state) {
+        LocalDateTime now = LocalDateTime.now();
+        state.setLastCheckedAt(now);
+        state.setLastSuccessAt(now);
+        state.setFailures(0);
+        state.setNextCheckAt(now.plusMinutes(freshMinutes));
+    }
+
+    // Record a failed check and back off exponentially
+    public void markMissing(SyncState state) {
+        LocalDateTime now = LocalDateTime.now();
+        int failures = state.getFailures() != null ? state.getFailures() + 1 : 1;
+        long delay = Math.min(backoffMinutes << Math.min(failures - 1, 20), backoffMaxHours * 60);
+        state.setLastCheckedAt(now);
+        state.setFailures(failures);
+        state.setNextCheckAt(now.plusMinutes(delay));
+    }
+
+    // Save sync states to storage as one batch
+    public void saveChanges(Collection<SyncState> states) {
+        syncStateRepo.saveAll(states);
+        syncStateRepo.flush();
+    }
+
+    // Save sync state to storage
+    public void saveChanges(SyncState state) {
+        syncStateRepo.saveAndFlush(state);
+    }
+
+}
@@ -0,0 +1,14 @@
+package no.odit.gatevas.type;
+
+public enum ImportChange {
+
+	NEW_STUDENT, // Not found in storage
+	MERGED_STUDENT, // Matched by name or login instead of email
+	EMAIL_CHANGE, // Email replaced, old email kept as login
+	NAME_FIX, // Name with encoding error replaced
+	NEW_APPLICATION, // Added to waitlist
+	ACCEPTED_APPLICATION, // Waitlist to accepted
+	NEW_ENROLLMENT, // Enrolled in imported course
+	REJECTED_ROW; // Would be quarantined
+
+}
@@ -0,0 +1,31 @@
+package no.odit.gatevas.type;
+
+import lombok.Getter;
+
+@Getter
+public enum SheetColumn {
+
+	EDUCATION("education", "Utdanning"),
+	FIRST_NAME("first_name", "Fornavn"),
+	LAST_NAME("last_name", "Etternavn"),
+	EMAIL("email", "E-postadresse"),
+	PHONE("phone", "Mobilnummer"),
+	BIRTH_DATE("birth_date", "Fodselsdato"),
+	SOCIAL_SECURITY_NUMBER("social_security_number", "Personnummer"),
+	ADDRESS("address", "Adresse"),
+	ZIP_CODE("zip_code", "Postnummer"),
+	CITY("city", "Sted"),
+	POSTAL_PLACE("postal_place", "Poststed"), // Zip code and city in one column
+	UPTAKE("uptake", "Opptak");
+
+	// Property key below gatevas.import.columns
+	private final String key;
+
+	private final String defaultHeader;
+
+	SheetColumn(String key, String defaultHeader) {
+		this.key = key;
+		this.defaultHeader = defaultHeader;
+	}
+
+}
@@ -0,0 +1,8 @@
+package no.odit.gatevas.type;
+
+public enum SyncScope {
+
+	COURSE,
+	STUDENT;
+
+}
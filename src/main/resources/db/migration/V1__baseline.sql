@@ -0,0 +1,99 @@
+-- Schema as created by Hibernate ddl-auto=update before migrations were introduced.
+-- Existing databases are baselined at this version and skip it.
+
+CREATE TABLE course_type (
+    id VARCHAR(255) NOT NULL,
+    short_name VARCHAR(255) NOT NULL,
+    long_name VARCHAR(255) NOT NULL,
+    alias_name VARCHAR(255),
+    csv_file VARCHAR(255),
+    use_uptake BIT,
+    updated_at DATETIME(6) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE phone (
+    id VARCHAR(255) NOT NULL,
+    country_code INTEGER NOT NULL,
+    phone_number INTEGER NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE student (
+    id VARCHAR(255) NOT NULL,
+    first_name VARCHAR(255) NOT NULL,
+    last_name VARCHAR(255) NOT NULL,
+    login VARCHAR(255),
+    email VARCHAR(255) NOT NULL,
+    phone_id VARCHAR(255),
+    birth_date DATE,
+    social_security_number VARCHAR(255),
+    tmp_password VARCHAR(255) NOT NULL,
+    login_info_sent BIT NOT NULL,
+    exported_to_csv BIT NOT NULL,
+    canvas_status VARCHAR(255) NOT NULL,
+    student_status VARCHAR(255),
+    canvas_id INTEGER,
+    updated_at DATETIME(6) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_student_email UNIQUE (email),
+    CONSTRAINT fk_student_phone FOREIGN KEY (phone_id) REFERENCES phone (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE home_address (
+    id VARCHAR(255) NOT NULL,
+    student_id VARCHAR(255) NOT NULL,
+    street_address VARCHAR(255) NOT NULL,
+    zip_code INTEGER NOT NULL,
+    city VARCHAR(255) NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_home_address_student FOREIGN KEY (student_id) REFERENCES student (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE course (
+    id VARCHAR(255) NOT NULL,
+    type_id VARCHAR(255) NOT NULL,
+    period VARCHAR(255) NOT NULL,
+    social_group VARCHAR(255),
+    csv_file VARCHAR(255),
+    canvas_status VARCHAR(255) NOT NULL,
+    canvas_id INTEGER,
+    updated_at DATETIME(6) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_course_type FOREIGN KEY (type_id) REFERENCES course_type (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE enrollment (
+    id VARCHAR(255) NOT NULL,
+    email_sent BIT NOT NULL,
+    text_sent BIT NOT NULL,
+    student_id VARCHAR(255) NOT NULL,
+    course_id VARCHAR(255) NOT NULL,
+    canvas_status VARCHAR(255) NOT NULL,
+    canvas_id BIGINT,
+    updated_at DATETIME(6) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_enrollment_student FOREIGN KEY (student_id) REFERENCES student (id),
+    CONSTRAINT fk_enrollment_course FOREIGN KEY (course_id) REFERENCES course (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE course_application (
+    id VARCHAR(255) NOT NULL,
+    student_id VARCHAR(255) NOT NULL,
+    course_id VARCHAR(255) NOT NULL,
+    status VARCHAR(255) NOT NULL,
+    uptake BIT,
+    updated_at DATETIME(6) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_course_application_student FOREIGN KEY (student_id) REFERENCES student (id),
+    CONSTRAINT fk_course_application_course FOREIGN KEY (course_id) REFERENCES course_type (id)
+) ENGINE = InnoDB;
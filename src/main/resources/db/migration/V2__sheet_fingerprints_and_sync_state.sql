@@ -0,0 +1,32 @@
+-- Tables and columns added since the baseline: import fingerprints, Canvas LMS sync state and the blind index of
+-- social security numbers. Values of the new column are filled by the field cipher migration at startup.
+
+ALTER TABLE student ADD COLUMN social_security_index VARCHAR(64) AFTER social_security_number;
+
+-- findBySocialSecurityIndex
+CREATE INDEX idx_student_social_security_index ON student (social_security_index);
+
+CREATE TABLE sheet_fingerprint (
+    id VARCHAR(255) NOT NULL,
+    sheet_key VARCHAR(255) NOT NULL,
+    email VARCHAR(255) NOT NULL,
+    hash VARCHAR(32) NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_sheet_fingerprint_sheet_key_email UNIQUE (sheet_key, email)
+) ENGINE = InnoDB;
+
+CREATE TABLE sync_state (
+    id VARCHAR(255) NOT NULL,
+    scope VARCHAR(255) NOT NULL,
+    target_id VARCHAR(255) NOT NULL,
+    last_checked_at DATETIME(6),
+    last_success_at DATETIME(6),
+    next_check_at DATETIME(6),
+    failures INTEGER NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_sync_state_scope_target_id UNIQUE (scope, target_id)
+) ENGINE = InnoDB;
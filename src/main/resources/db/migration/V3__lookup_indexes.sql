@@ -0,0 +1,26 @@
+-- Indexes for the finders of StudentRepo, CourseApplicationRepo, EnrollmentRepo and HomeAddressRepo.
+-- Leading columns are the equality filters, trailing columns the sort order of the streamed rosters.
+
+-- findByLoginIsNotNullAndLogin
+CREATE INDEX idx_student_login ON student (login);
+
+-- findByFirstNameAndLastName, findByFirstNameAndLastNameAndBirthDate(IsNull)
+CREATE INDEX idx_student_name_birth_date ON student (first_name, last_name, birth_date);
+
+-- findByStudentAndCourse
+CREATE INDEX idx_course_application_student_course ON course_application (student_id, course_id);
+
+-- findByStatus, findByStatusAndCourse, streamApplications, acceptEnrolledApplications, findEnrolledWaitlistEmails
+CREATE INDEX idx_course_application_status_course ON course_application (status, course_id);
+
+-- findByCourse, streamRoster
+CREATE INDEX idx_course_application_course_created_at ON course_application (course_id, created_at);
+
+-- findByStudentAndCourse, findByStudent, acceptEnrolledApplications
+CREATE INDEX idx_enrollment_student_course ON enrollment (student_id, course_id);
+
+-- findByCourse, streamRosters
+CREATE INDEX idx_enrollment_course_created_at ON enrollment (course_id, created_at);
+
+-- findByStudent
+CREATE INDEX idx_home_address_student ON home_address (student_id);
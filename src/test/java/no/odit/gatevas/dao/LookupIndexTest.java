@@ -0,0 +1,242 @@
+package no.odit.gatevas.dao;
+
+import no.odit.gatevas.model.Classroom;
+import no.odit.gatevas.model.CourseType;
+import no.odit.gatevas.model.Student;
+import no.odit.gatevas.type.ApplicationStatus;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Migrates an empty MySQL database, validates the entities against it and checks that the SQL generated
+// for each finder is planned with its index
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "no.odit.gatevas.dao.LookupIndexTest$SqlCapture"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class LookupIndexTest {
+
+    private static final int COURSE_TYPES = 20;
+    private static final int STUDENTS = 1000;
+
+    @Container
+    private static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0.22");
+
+    private static boolean seeded;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private StudentRepo studentRepo;
+
+    @Autowired
+    private CourseTypeRepo courseTypeRepo;
+
+    @Autowired
+    private CourseRepo courseRepo;
+
+    @Autowired
+    private CourseApplicationRepo courseApplicationRepo;
+
+    @Autowired
+    private EnrollmentRepo enrollmentRepo;
+
+    @Autowired
+    private HomeAddressRepo homeAddressRepo;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", mysql::getJdbcUrl);
+        registry.add("spring.datasource.username", mysql::getUsername);
+        registry.add("spring.datasource.password", mysql::getPassword);
+    }
+
+    // Enough rows that the optimizer prefers the indexes over scanning, committed and analyzed once
+    @BeforeEach
+    void insertRows() {
+        if (seeded) return;
+        jdbcTemplate.batchUpdate("INSERT INTO course_type (id, short_name, long_name, updated_at, created_at) "
+                + "VALUES (?, ?, ?, NOW(), NOW())", rows(COURSE_TYPES, i -> new Object[]{
+                id("type", i), "T" + i, "Type " + i}));
+        jdbcTemplate.batchUpdate("INSERT INTO course (id, type_id, period, canvas_status, updated_at, created_at) "
+                + "VALUES (?, ?, ?, 'UNKNOWN', NOW(), NOW())", rows(COURSE_TYPES * 2, i -> new Object[]{
+                id("course", i), id("type", i % COURSE_TYPES), "H" + (20 + i / COURSE_TYPES)}));
+        jdbcTemplate.batchUpdate("INSERT INTO student (id, first_name, last_name, login, email, birth_date, "
+                + "social_security_index, tmp_password, login_info_sent, exported_to_csv, canvas_status, updated_at, "
+                + "created_at) VALUES (?, ?, ?, ?, ?, DATE_ADD('1990-01-01', INTERVAL ? DAY), ?, 'secret', 0, 0, "
+                + "'UNKNOWN', NOW(), NOW())", rows(STUDENTS, i -> new Object[]{
+                id("student", i), "First" + i, "Last" + i, "student" + i + "@old.no", "student" + i + "@new.no", i,
+                "index" + i}));
+        jdbcTemplate.batchUpdate("INSERT INTO home_address (id, student_id, street_address, zip_code, city, updated_at, "
+                + "created_at) VALUES (?, ?, ?, 150, 'Oslo', NOW(), NOW())", rows(STUDENTS, i -> new Object[]{
+                id("address", i), id("student", i), "Gate " + i}));
+        jdbcTemplate.batchUpdate("INSERT INTO enrollment (id, email_sent, text_sent, student_id, course_id, canvas_status, "
+                + "updated_at, created_at) VALUES (?, 0, 0, ?, ?, 'UNKNOWN', NOW(), NOW())", rows(STUDENTS, i -> new Object[]{
+                id("enrollment", i), id("student", i), id("course", i % (COURSE_TYPES * 2))}));
+        jdbcTemplate.batchUpdate("INSERT INTO course_application (id, student_id, course_id, status, updated_at, created_at) "
+                + "VALUES (?, ?, ?, ?, NOW(), NOW())", rows(STUDENTS * 2, i -> new Object[]{
+                id("application", i), id("student", i / 2), id("type", (i / 2 + i % 2) % COURSE_TYPES),
+                i % 2 == 0 && i / 2 % 10 == 0 ? "WAITLIST" : i % 2 == 0 ? "ACCEPTED" : "FINISHED"}));
+        jdbcTemplate.execute("ANALYZE TABLE course_type, course, student, home_address, enrollment, course_application");
+        seeded = true;
+    }
+
+    @Test
+    void migratesToLatestVersion() {
+        assertEquals("3", jdbcTemplate.queryForObject("SELECT version FROM flyway_schema_history WHERE success = 1 "
+                + "ORDER BY installed_rank DESC LIMIT 1", String.class));
+    }
+
+    // Runs the finder in a rolled back transaction, then explains the first statement it sent
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("finders")
+    void finderUsesIndexes(String finder, Finder call, List<Object> parameters, Set<String> indexes) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            status.setRollbackOnly();
+            SqlCapture.statements.clear();
+            call.run(this);
+        });
+        assertFalse(SqlCapture.statements.isEmpty(), finder + " sent no statement");
+        String sql = SqlCapture.statements.get(0);
+        assertEquals(parameters.size(), sql.chars().filter(c -> c == '?').count(), sql);
+
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, parameters.toArray());
+        Set<String> keys = plan.stream().map(row -> row.get("key")).filter(Objects::nonNull).map(String::valueOf)
+                .collect(Collectors.toSet());
+        assertTrue(keys.containsAll(indexes), "Expected " + indexes + " for " + sql + " in " + plan);
+    }
+
+    private static Stream<Arguments> finders() {
+        String student = id("student", 0).toString();
+        String type = id("type", 0).toString();
+        String course = id("course", 0).toString();
+        return Stream.of(
+                Arguments.of("StudentRepo.findByLoginIsNotNullAndLogin",
+                        (Finder) test -> test.studentRepo.findByLoginIsNotNullAndLogin("student0@old.no"),
+                        List.of("student0@old.no"), Set.of("idx_student_login")),
+                Arguments.of("StudentRepo.findByFirstNameAndLastNameAndBirthDate",
+                        (Finder) test -> test.studentRepo.findByFirstNameAndLastNameAndBirthDate("First0", "Last0",
+                                LocalDate.of(1990, 1, 1)),
+                        List.of("First0", "Last0", "1990-01-01"), Set.of("idx_student_name_birth_date")),
+                Arguments.of("StudentRepo.findBySocialSecurityIndex",
+                        (Finder) test -> test.studentRepo.findBySocialSecurityIndex("index0"),
+                        List.of("index0"), Set.of("idx_student_social_security_index")),
+                Arguments.of("HomeAddressRepo.findByStudent",
+                        (Finder) test -> test.homeAddressRepo.findByStudent(test.student()),
+                        List.of(student), Set.of("idx_home_address_student")),
+                Arguments.of("CourseApplicationRepo.findByStudentAndCourse",
+                        (Finder) test -> test.courseApplicationRepo.findByStudentAndCourse(test.student(), test.courseType()),
+                        List.of(student, type), Set.of("idx_course_application_student_course")),
+                Arguments.of("CourseApplicationRepo.findByStatusAndCourse",
+                        (Finder) test -> test.courseApplicationRepo.findByStatusAndCourse(ApplicationStatus.WAITLIST,
+                                test.courseType()),
+                        List.of("WAITLIST", type), Set.of("idx_course_application_status_course")),
+                Arguments.of("CourseApplicationRepo.streamRoster",
+                        (Finder) test -> drain(test.courseApplicationRepo.streamRoster(test.courseType())),
+                        List.of(type), Set.of("idx_course_application_course_created_at", "idx_home_address_student")),
+                Arguments.of("CourseApplicationRepo.acceptEnrolledApplications",
+                        (Finder) test -> test.courseApplicationRepo.acceptEnrolledApplications(),
+                        List.of(), Set.of("idx_course_application_status_course", "idx_enrollment_student_course")),
+                Arguments.of("CourseApplicationRepo.findEnrolledWaitlistEmails",
+                        (Finder) test -> test.courseApplicationRepo.findEnrolledWaitlistEmails(test.courseType()),
+                        List.of(type, type), Set.of("idx_course_application_status_course", "idx_enrollment_student_course")),
+                Arguments.of("EnrollmentRepo.findByStudentAndCourse",
+                        (Finder) test -> test.enrollmentRepo.findByStudentAndCourse(test.student(), test.course()),
+                        List.of(student, course), Set.of("idx_enrollment_student_course")),
+                Arguments.of("EnrollmentRepo.streamRosters",
+                        (Finder) test -> drain(test.enrollmentRepo.streamRosters(List.of(test.course()))),
+                        List.of(course), Set.of("idx_enrollment_course_created_at", "idx_home_address_student",
+                                "idx_course_application_student_course")));
+    }
+
+    // References bound by id only, so that loading them sends no statement
+    private Student student() {
+        return studentRepo.getOne(id("student", 0));
+    }
+
+    private CourseType courseType() {
+        return courseTypeRepo.getOne(id("type", 0));
+    }
+
+    private Classroom course() {
+        return courseRepo.getOne(id("course", 0));
+    }
+
+    private static void drain(Stream<?> rows) {
+        try (rows) {
+            rows.count();
+        }
+    }
+
+    private static UUID id(String table, int index) {
+        return UUID.nameUUIDFromBytes((table + index).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Batch arguments with the ids bound as uuid-char
+    private static List<Object[]> rows(int count, IntFunction<Object[]> row) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> Stream.of(row.apply(i)).map(value -> value instanceof UUID ? value.toString() : value)
+                        .toArray())
+                .collect(Collectors.toList());
+    }
+
+    private interface Finder {
+
+        void run(LookupIndexTest test);
+    }
+
+    // Records the SQL Hibernate sends, registered through hibernate.session_factory.statement_inspector
+    public static class SqlCapture implements StatementInspector {
+
+        private static final List<String> statements = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+    }
+
+}
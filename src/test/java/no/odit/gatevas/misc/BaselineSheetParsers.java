@@ -0,0 +1,49 @@
+package no.odit.gatevas.misc;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// Sheet value parsing as SheetImportCSV did it before SheetParsers, the reference for its tests and benchmark
+final class BaselineSheetParsers {
+
+    private BaselineSheetParsers() {
+    }
+
+    static Integer parsePhone(String input) {
+        String phoneInput = input.replaceAll("[^0-9]", "");
+        phoneInput = phoneInput.length() > 8 ? phoneInput.substring(phoneInput.length() - 8) : phoneInput;
+        return phoneInput.length() > 0 ? Integer.parseInt(phoneInput) : null;
+    }
+
+    static LocalDate parseBirthDate(String input, LocalDate today) {
+        try {
+            String birthInput = input.replaceAll("[^\\d]", "");
+            if (birthInput.length() == 8) birthInput = birthInput.substring(0, 4) + birthInput.substring(6, 8);
+            if (birthInput.length() == 5) birthInput = "0" + birthInput;
+            LocalDate birthDate = LocalDate.parse(birthInput, DateTimeFormatter.ofPattern("ddMMyy"));
+            if (birthDate.isAfter(today.minusYears(15))) birthDate = birthDate.minusYears(100);
+            return birthDate;
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    // Throws NumberFormatException without digits and overflows on long digit runs
+    static Integer parseZip(String input) {
+        return Integer.parseInt(input.replaceAll("[^0-9]", ""));
+    }
+
+    static String parseCity(String input) {
+        return input.replaceAll("[^A-Za-z]", "");
+    }
+
+    static String parseEducationAlternative(String education) {
+        return education.length() > 8 && education.contains(" - ") ? education.split(" - ")[0] : education;
+    }
+
+    static String normalize(String value) {
+        return value.trim().replaceAll("\\s+", " ");
+    }
+
+}
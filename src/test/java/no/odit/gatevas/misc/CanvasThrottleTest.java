@@ -0,0 +1,140 @@
+package no.odit.gatevas.misc;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CanvasThrottleTest {
+
+    private CanvasThrottle throttle;
+
+    @BeforeEach
+    void createThrottle() {
+        throttle = new CanvasThrottle();
+        ReflectionTestUtils.setField(throttle, "maxConcurrency", 4);
+        ReflectionTestUtils.setField(throttle, "lowQuota", 200.0);
+        ReflectionTestUtils.setField(throttle, "refillPerSecond", 10.0);
+        ReflectionTestUtils.setField(throttle, "maxRetries", 2);
+        ReflectionTestUtils.setField(throttle, "backoffMillis", 1L);
+        ReflectionTestUtils.setField(throttle, "backoffMaxMillis", 2L);
+        ReflectionTestUtils.invokeMethod(throttle, "init");
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "429, '', true",
+            "403, 403 Forbidden (Rate Limit Exceeded), true",
+            "403, 403 Forbidden, false",
+            "401, Rate Limit Exceeded, false",
+            "404, '', false",
+            "500, '', false"
+    })
+    void classifiesByStatus(int status, String body, boolean throttled) {
+        assertEquals(throttled, CanvasThrottle.isThrottled(status, body));
+        assertEquals(throttled, CanvasThrottle.isThrottled(new CanvasResponseException(status, body)));
+        assertEquals(throttled, CanvasThrottle.isThrottled(new IOException(new CanvasResponseException(status, body))));
+        assertEquals(throttled, CanvasThrottle.isThrottled(WebClientResponseException.create(status, "", HttpHeaders.EMPTY,
+                body.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void ignoresMessagesWithoutStatus() {
+        assertFalse(CanvasThrottle.isThrottled(new IOException("Rate Limit Exceeded")));
+        assertFalse(CanvasThrottle.isThrottled(new RuntimeException("429 Too Many Requests")));
+    }
+
+    @Test
+    void retriesThrottledRequests() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        String result = throttle.execute(() -> {
+            if (attempts.incrementAndGet() < 3) throw new CanvasResponseException(429, "");
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+
+        // Halved twice, then raised by a full window of one success
+        assertEquals(2, throttle.getLimit());
+    }
+
+    @Test
+    void failsFastOnOtherErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(CanvasResponseException.class, () -> throttle.execute(() -> {
+            attempts.incrementAndGet();
+            throw new CanvasResponseException(401, "");
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void onlySuccessesRaiseLimit() throws Exception {
+        throttle.permit().block(Duration.ofSeconds(1)).release(CanvasThrottle.Outcome.THROTTLED);
+        assertEquals(2, throttle.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            assertThrows(IOException.class, () -> throttle.execute(() -> {
+                throw new IOException("Connection reset");
+            }));
+        }
+        assertEquals(2, throttle.getLimit());
+
+        for (int i = 0; i < 2; i++) {
+            throttle.execute(() -> "ok");
+        }
+        assertEquals(3, throttle.getLimit());
+    }
+
+    @Test
+    void cancelledWaitersDoNotLeakSlots() {
+        CanvasThrottle.Permit[] held = new CanvasThrottle.Permit[4];
+        for (int i = 0; i < held.length; i++) {
+            held[i] = throttle.permit().block(Duration.ofSeconds(1));
+        }
+
+        // Waits behind the full limit, then gives up
+        AtomicReference<CanvasThrottle.Permit> received = new AtomicReference<>();
+        Disposable waiting = throttle.permit().subscribe(received::set);
+        waiting.dispose();
+
+        for (CanvasThrottle.Permit permit : held) {
+            permit.release(CanvasThrottle.Outcome.FAILURE);
+            permit.release(CanvasThrottle.Outcome.FAILURE);
+        }
+        assertNull(received.get());
+
+        // Every slot is free again, repeated releases included
+        for (int i = 0; i < held.length; i++) {
+            assertNotNull(throttle.permit().block(Duration.ofSeconds(1)));
+        }
+    }
+
+    @Test
+    void releasedSlotGoesToWaiter() {
+        for (int i = 0; i < 3; i++) {
+            throttle.permit().block(Duration.ofSeconds(1));
+        }
+        CanvasThrottle.Permit last = throttle.permit().block(Duration.ofSeconds(1));
+
+        AtomicReference<CanvasThrottle.Permit> received = new AtomicReference<>();
+        throttle.permit().subscribe(received::set);
+        assertNull(received.get());
+
+        last.release(CanvasThrottle.Outcome.SUCCESS);
+        assertNotNull(received.get());
+    }
+
+}
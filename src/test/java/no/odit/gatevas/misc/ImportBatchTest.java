@@ -0,0 +1,195 @@
+package no.odit.gatevas.misc;
+
+import no.odit.gatevas.model.CourseApplication;
+import no.odit.gatevas.model.CourseType;
+import no.odit.gatevas.model.HomeAddress;
+import no.odit.gatevas.model.Phone;
+import no.odit.gatevas.model.Student;
+import no.odit.gatevas.type.ApplicationStatus;
+import no.odit.gatevas.type.ImportChange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A row that throws midway must leave the batch as the earlier rows left it
+class ImportBatchTest {
+
+    private static final LocalDate BIRTH_DATE = LocalDate.of(2000, 1, 1);
+
+    private CourseType courseType;
+
+    private ImportBatch batch;
+
+    @BeforeEach
+    void createBatch() {
+        courseType = new CourseType();
+        courseType.setId(UUID.randomUUID());
+        batch = new ImportBatch(new StudentResolver(List.of()), student -> {
+        });
+    }
+
+    @Test
+    void failedRowLeavesNoPartialEntities() {
+        Student student = createStudent("Ola", "ola@new.no", "index1");
+        failRow(() -> {
+            Phone phone = new Phone();
+            phone.setPhoneNumber(91234567);
+            batch.savePhone(phone);
+            student.setPhone(phone);
+            batch.trackStudent(student, BIRTH_DATE);
+            batch.saveStudent(student);
+            batch.saveHomeAddress(student, createHomeAddress(student));
+            batch.saveCourseApplication(student, courseType, createCourseApplication(student));
+            batch.addRow(student);
+        });
+
+        assertTrue(batch.getPhones().isEmpty());
+        assertTrue(batch.getStudents().isEmpty());
+        assertTrue(batch.getHomeAddresses().isEmpty());
+        assertTrue(batch.getCourseApplications().isEmpty());
+        assertEquals(0, batch.size());
+        assertTrue(batch.findHomeAddress(student).isEmpty());
+        assertTrue(batch.findCourseApplication(student, courseType).isEmpty());
+    }
+
+    @Test
+    void failedRowRestoresEntitiesOfEarlierRow() {
+        Student student = createStudent("Ola", "ola@old.no", "index1");
+        HomeAddress homeAddress = createHomeAddress(student);
+        CourseApplication courseApplication = createCourseApplication(student);
+        batch.processRow(List.of("ola@old.no"), () -> {
+            batch.trackStudent(student, BIRTH_DATE);
+            batch.saveStudent(student);
+            batch.saveHomeAddress(student, homeAddress);
+            batch.saveCourseApplication(student, courseType, courseApplication);
+            batch.addRow(student);
+            return student;
+        });
+
+        // Same person with a new email, address and accepted application
+        failRow(() -> {
+            Student found = batch.findStudent("ola@old.no").orElseThrow();
+            found.setLogin(found.getEmail());
+            found.setEmail("ola@new.no");
+            found.setFirstName("Ole");
+            batch.saveStudent(found);
+            HomeAddress address = batch.findHomeAddress(found).orElseThrow();
+            address.setStreetAddress("Gate 2");
+            address.setZipCode(5003);
+            address.setCity("Bergen");
+            CourseApplication application = batch.findCourseApplication(found, courseType).orElseThrow();
+            application.setStatus(ApplicationStatus.ACCEPTED);
+            application.setUptake(true);
+            batch.addRow(found);
+        });
+
+        assertEquals("ola@old.no", student.getEmail());
+        assertNull(student.getLogin());
+        assertEquals("Ola", student.getFirstName());
+        assertEquals(BIRTH_DATE, student.getBirthDate());
+        assertEquals("Gate 1", homeAddress.getStreetAddress());
+        assertEquals(150, homeAddress.getZipCode());
+        assertEquals("Oslo", homeAddress.getCity());
+        assertEquals(ApplicationStatus.WAITLIST, courseApplication.getStatus());
+        assertNull(courseApplication.getUptake());
+
+        // The earlier row keeps its entities
+        assertEquals(List.of(student), List.copyOf(batch.getStudents()));
+        assertEquals(List.of(homeAddress), List.copyOf(batch.getHomeAddresses()));
+        assertEquals(List.of(courseApplication), List.copyOf(batch.getCourseApplications()));
+        assertEquals(1, batch.size());
+        assertSame(student, batch.findStudent("ola@old.no").orElseThrow());
+        assertTrue(batch.findStudent("ola@new.no").isEmpty());
+    }
+
+    @Test
+    void laterRowDoesNotResolveToRolledBackStudent() {
+        Student earlier = createStudent("Kari", "kari@old.no", null);
+        batch.processRow(List.of("kari@old.no"), () -> {
+            batch.trackStudent(earlier, BIRTH_DATE);
+            batch.saveStudent(earlier);
+            return earlier;
+        });
+
+        // New student that takes over the email key of the earlier one and brings its own keys
+        Student rolledBack = createStudent("Kari", "kari@old.no", "index2");
+        failRow(() -> {
+            rolledBack.setLastName("Hansen");
+            batch.trackStudent(rolledBack, BIRTH_DATE);
+            batch.saveStudent(rolledBack);
+        });
+
+        assertSame(earlier, batch.findStudent("kari@old.no").orElseThrow());
+        assertTrue(batch.findStudentBySocialSecurityIndex("index2").isEmpty());
+        assertTrue(batch.findStudent("Kari", "Hansen", BIRTH_DATE).isEmpty());
+        assertSame(earlier, batch.findStudent("Kari", "Nordmann", BIRTH_DATE).orElseThrow());
+        assertFalse(batch.getStudents().contains(rolledBack));
+    }
+
+    @Test
+    void failedRowRestoresStoredStudentAndDropsPlannedChanges() {
+        Student stored = createStudent("Per", "per@old.no", null);
+        stored.setId(UUID.randomUUID());
+        ImportPlan plan = new ImportPlan(List.of(stored), List.of(), List.of());
+        batch = new ImportBatch(new StudentResolver(List.of()), student -> {
+        }, plan);
+
+        batch.processRow(List.of("ola@new.no"), () -> {
+            batch.recordChange(ImportChange.NEW_STUDENT, "Ola", "Nordmann", "ola@new.no", null);
+            return null;
+        });
+        failRow(() -> {
+            Student found = batch.findStoredStudent(stored.getId(), id -> {
+                throw new AssertionError("Dry run must read the snapshot");
+            }).orElseThrow();
+            batch.recordChange(ImportChange.EMAIL_CHANGE, "Per", "Nordmann", "per@new.no", "Replaces " + found.getEmail());
+            found.setLogin(found.getEmail());
+            found.setEmail("per@new.no");
+            batch.saveStudent(found);
+        });
+
+        assertEquals("per@old.no", stored.getEmail());
+        assertNull(stored.getLogin());
+        assertTrue(batch.getStudents().isEmpty());
+        assertEquals(1, plan.getChanges().size());
+        assertEquals(1, plan.getSummary().get(ImportChange.NEW_STUDENT));
+    }
+
+    // Runs a row that throws after its work, expecting the failure to reach the caller
+    private void failRow(Runnable work) {
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () ->
+                batch.processRow(List.of("key"), () -> {
+                    work.run();
+                    throw new IllegalStateException("Row failed");
+                }));
+        assertEquals("Row failed", failure.getMessage());
+    }
+
+    private static Student createStudent(String firstName, String email, String socialSecurityIndex) {
+        Student student = new Student();
+        student.setFirstName(firstName);
+        student.setLastName("Nordmann");
+        student.setEmail(email);
+        student.setBirthDate(BIRTH_DATE);
+        student.setSocialSecurityIndex(socialSecurityIndex);
+        return student;
+    }
+
+    private static HomeAddress createHomeAddress(Student student) {
+        return HomeAddress.builder().student(student).streetAddress("Gate 1").zipCode(150).city("Oslo").build();
+    }
+
+    private CourseApplication createCourseApplication(Student student) {
+        CourseApplication courseApplication = new CourseApplication();
+        courseApplication.setStudent(student);
+        courseApplication.setCourse(courseType);
+        courseApplication.setStatus(ApplicationStatus.WAITLIST);
+        return courseApplication;
+    }
+
+}
@@ -0,0 +1,60 @@
+package no.odit.gatevas.misc;
+
+import java.time.LocalDate;
+
+// Compares the per-row parsing cost of SheetParsers with the regular expression parsing it replaced.
+// Not run by the build, start it after test-compile with:
+// java -cp target/classes:target/test-classes no.odit.gatevas.misc.SheetParsersBenchmark [rows] [rounds]
+public class SheetParsersBenchmark {
+
+    private static final String[] PHONES = {"+47 912 34 567", "91234567", "004791234567", "912-34-567"};
+    private static final String[] BIRTH_DATES = {"01.02.93", "010293", "01021993", "1.02.93"};
+    private static final String[] POSTAL_PLACES = {"0150 Oslo", "5003 Bergen", "7010 Trondheim", "9008 Tromsø"};
+    private static final String[] EDUCATIONS = {"Fagbrev elektro - Vg3", "Helsefagarbeider",
+            "Barne- og ungdomsarbeider - 2021"};
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        LocalDate today = LocalDate.now();
+
+        // The first round warms up the JIT. The checksum keeps the work from being optimized away and is zero
+        // when both parse every row alike
+        for (int round = 0; round < rounds; round++) {
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < rows; i++) checksum += parseBaseline(i, today);
+            long baseline = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < rows; i++) checksum -= parse(i, today);
+            long parsers = System.nanoTime() - start;
+
+            System.out.printf("Round %d: baseline %.0f ns/row, SheetParsers %.0f ns/row, %.1fx (checksum %d)%n",
+                    round + 1, baseline / (double) rows, parsers / (double) rows, baseline / (double) parsers, checksum);
+        }
+    }
+
+    private static long parseBaseline(int row, LocalDate today) {
+        Integer phone = BaselineSheetParsers.parsePhone(PHONES[row % PHONES.length]);
+        LocalDate birthDate = BaselineSheetParsers.parseBirthDate(BIRTH_DATES[row % BIRTH_DATES.length], today);
+        String postalPlace = POSTAL_PLACES[row % POSTAL_PLACES.length];
+        String education = EDUCATIONS[row % EDUCATIONS.length];
+        return phone + birthDate.toEpochDay() + BaselineSheetParsers.parseZip(postalPlace)
+                + BaselineSheetParsers.parseCity(postalPlace).length()
+                + BaselineSheetParsers.parseEducationAlternative(education).length()
+                + BaselineSheetParsers.normalize(education).length();
+    }
+
+    private static long parse(int row, LocalDate today) {
+        Integer phone = SheetParsers.parsePhone(PHONES[row % PHONES.length]);
+        LocalDate birthDate = SheetParsers.parseBirthDate(BIRTH_DATES[row % BIRTH_DATES.length], today);
+        String postalPlace = POSTAL_PLACES[row % POSTAL_PLACES.length];
+        String education = EDUCATIONS[row % EDUCATIONS.length];
+        return phone + birthDate.toEpochDay() + SheetParsers.parseZip(postalPlace)
+                + SheetParsers.parseCity(postalPlace).length()
+                + SheetParsers.parseEducationAlternative(education).length()
+                + SheetParsers.normalize(education).length();
+    }
+
+}
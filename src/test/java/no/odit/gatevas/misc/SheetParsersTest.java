@@ -0,0 +1,127 @@
+package no.odit.gatevas.misc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Pins each parser to the expected value and to the regular expression parsing it replaced
+class SheetParsersTest {
+
+    // Students born after 2005-10-18 are too young, so their two-digit years belong to the previous century
+    private static final LocalDate TODAY = LocalDate.of(2020, 10, 18);
+
+    @ParameterizedTest
+    @CsvSource({
+            "010293, 1993-02-01",
+            "01.02.93, 1993-02-01",
+            "01021993, 1993-02-01",
+            "01.02.1993, 1993-02-01",
+            "1.02.93, 1993-02-01",
+            "10293, 1993-02-01",
+            "181005, 2005-10-18",
+            "191005, 1905-10-19",
+            "010106, 1906-01-01",
+            "010100, 2000-01-01",
+            "311220, 1920-12-31",
+            "310293, 1993-02-28",
+            "290200, 2000-02-29",
+            "310400, 2000-04-30",
+            "000193, ",
+            "320193, ",
+            "011393, ",
+            "010093, ",
+            "0102, ",
+            "0102939, ",
+            "010219931, ",
+            "abcdef, "
+    })
+    void parsesBirthDate(String input, LocalDate expected) {
+        assertEquals(expected, SheetParsers.parseBirthDate(input, TODAY));
+        assertEquals(BaselineSheetParsers.parseBirthDate(input, TODAY), SheetParsers.parseBirthDate(input, TODAY));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "+47 912 34 567, 91234567",
+            "91234567, 91234567",
+            "004791234567, 91234567",
+            "912-34-567, 91234567",
+            "+47 04 12 34 56, 4123456",
+            "1234, 1234",
+            "tlf., ",
+            "'', "
+    })
+    void parsesLastEightPhoneDigits(String input, Integer expected) {
+        assertEquals(expected, SheetParsers.parsePhone(input));
+        assertEquals(BaselineSheetParsers.parsePhone(input), SheetParsers.parsePhone(input));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0150 Oslo, 150",
+            "5003, 5003",
+            "7, 7",
+            "Oslo, ",
+            "12345, ",
+            "0150 1234, ",
+            "'', "
+    })
+    void parsesZipOfAtMostFourDigits(String input, Integer expected) {
+        assertEquals(expected, SheetParsers.parseZip(input));
+
+        // The baseline threw without digits and overflowed on long digit runs, both are null now
+        if (expected != null) assertEquals(BaselineSheetParsers.parseZip(input), SheetParsers.parseZip(input));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0150 Oslo, Oslo",
+            "Bergen, Bergen",
+            "Mo i Rana, MoiRana",
+            "Ålesund, lesund",
+            "Tromsø, Troms",
+            "9008, ''"
+    })
+    void keepsOnlyLettersAToZInCity(String input, String expected) {
+        assertEquals(expected, SheetParsers.parseCity(input));
+        assertEquals(BaselineSheetParsers.parseCity(input), SheetParsers.parseCity(input));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "Fagbrev elektro - Vg3, Fagbrev elektro",
+            "Barne- og ungdomsarbeider - 2021, Barne- og ungdomsarbeider",
+            "Helsefagarbeider, Helsefagarbeider",
+            "A - B, A - B"
+    })
+    void parsesEducationAlternative(String input, String expected) {
+        assertEquals(expected, SheetParsers.parseEducationAlternative(input));
+        assertEquals(BaselineSheetParsers.parseEducationAlternative(input), SheetParsers.parseEducationAlternative(input));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "'  Ola   Nordmann ', Ola Nordmann",
+            "'Ola\tNordmann', Ola Nordmann",
+            "Ola, Ola"
+    })
+    void normalizesWhitespace(String input, String expected) {
+        assertEquals(expected, SheetParsers.normalize(input));
+        assertEquals(BaselineSheetParsers.normalize(input), SheetParsers.normalize(input));
+    }
+
+    @Test
+    void acceptsMissingValues() {
+        assertNull(SheetParsers.parsePhone(null));
+        assertNull(SheetParsers.parseBirthDate(null, TODAY));
+        assertNull(SheetParsers.parseBirthDate("", TODAY));
+        assertNull(SheetParsers.parseZip(null));
+        assertNull(SheetParsers.parseCity(null));
+    }
+
+}